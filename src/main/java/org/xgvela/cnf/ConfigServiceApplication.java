@@ -14,7 +14,14 @@
 
 package org.xgvela.cnf;
 
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
 import org.apache.catalina.connector.Connector;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -26,8 +33,11 @@ import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.web.client.RestTemplate;
 
+import org.xgvela.cnf.util.MetricsUtil;
 import org.xgvela.logging.GlobalExceptionHandler;
 
+import io.prometheus.client.Gauge;
+
 @SpringBootApplication
 @EnableAsync
 @ComponentScan(basePackages = { "org.xgvela" })
@@ -39,16 +49,85 @@ public class ConfigServiceApplication {
 		app.run(args);
 	}
 
-	@Bean
-	public RestTemplate restTemplate() {
-		return new RestTemplate(getClientHttpRequestFactory());
+	public static final String NETCONF_REST = "netconfRestTemplate";
+	public static final String TOPO_REST = "topoRestTemplate";
+	public static final String ACTION_REST = "actionRestTemplate";
+
+	private static final Gauge httpPoolConnections = MetricsUtil.addGauge("cmaas_http_pool_connections",
+			"Connections of the pooled HTTP clients", new String[] { "client", "state" });
+
+	@Value("${cmaas.http.connect-timeout-ms:10000}")
+	private int connectTimeout;
+
+	@Value("${cmaas.http.netconf.max-connections:16}")
+	private int netconfMaxConnections;
+
+	@Value("${cmaas.http.netconf.read-timeout-ms:60000}")
+	private int netconfReadTimeout;
+
+	@Value("${cmaas.http.topo.max-connections:8}")
+	private int topoMaxConnections;
+
+	@Value("${cmaas.http.topo.read-timeout-ms:10000}")
+	private int topoReadTimeout;
+
+	@Value("${cmaas.http.action.max-connections:4}")
+	private int actionMaxConnections;
+
+	// operations may run long, 0 waits indefinitely
+	@Value("${cmaas.http.action.read-timeout-ms:0}")
+	private int actionReadTimeout;
+
+	// netconf REST api (localhost:8008)
+	@Bean(NETCONF_REST)
+	public RestTemplate netconfRestTemplate() {
+		return new RestTemplate(getClientHttpRequestFactory("netconf", netconfMaxConnections, netconfReadTimeout));
+	}
+
+	// topo-engine (TMaaS)
+	@Bean(TOPO_REST)
+	public RestTemplate topoRestTemplate() {
+		return new RestTemplate(getClientHttpRequestFactory("topo", topoMaxConnections, topoReadTimeout));
+	}
+
+	// topo-engine (TMaaS) operation actions, kept apart from the topology reads
+	@Bean(ACTION_REST)
+	public RestTemplate actionRestTemplate() {
+		return new RestTemplate(getClientHttpRequestFactory("action", actionMaxConnections, actionReadTimeout));
+	}
+
+	// keep-alive connection pool for a single downstream
+	private HttpComponentsClientHttpRequestFactory getClientHttpRequestFactory(String client, int maxConnections,
+			int readTimeout) {
+
+		PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager();
+		pool.setMaxTotal(maxConnections);
+		pool.setDefaultMaxPerRoute(maxConnections);
+		pool.setValidateAfterInactivity(2000);
+
+		RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(connectTimeout)
+				.setSocketTimeout(readTimeout).setConnectionRequestTimeout(connectTimeout).build();
+
+		CloseableHttpClient httpClient = HttpClients.custom().setConnectionManager(pool)
+				.setDefaultRequestConfig(requestConfig).evictExpiredConnections()
+				.evictIdleConnections(30, TimeUnit.SECONDS).build();
+
+		// pool statistics, read on every scrape
+		addPoolGauge(client, "leased", () -> pool.getTotalStats().getLeased());
+		addPoolGauge(client, "available", () -> pool.getTotalStats().getAvailable());
+		addPoolGauge(client, "pending", () -> pool.getTotalStats().getPending());
+		addPoolGauge(client, "max", () -> pool.getTotalStats().getMax());
+
+		return new HttpComponentsClientHttpRequestFactory(httpClient);
 	}
 
-	private HttpComponentsClientHttpRequestFactory getClientHttpRequestFactory() {
-		int timeout = 10000;
-		HttpComponentsClientHttpRequestFactory clientHttpRequestFactory = new HttpComponentsClientHttpRequestFactory();
-		clientHttpRequestFactory.setConnectTimeout(timeout);
-		return clientHttpRequestFactory;
+	private static void addPoolGauge(String client, String state, IntSupplier value) {
+		httpPoolConnections.setChild(new Gauge.Child() {
+			@Override
+			public double get() {
+				return value.getAsInt();
+			}
+		}, client, state);
 	}
 
 	// HTTP port
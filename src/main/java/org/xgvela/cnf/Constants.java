@@ -38,6 +38,7 @@ public class Constants {
 
 	public static final String YANG_FILE_PATH = "/netconf/apps/config/model/";
 	public static final String FXS_FILE_PATH = "/netconf/etc/netconf/";
+	public static final String FXS_CACHE_PATH = FXS_FILE_PATH + "fxs-cache/";
 
 	public static final String YANG = ".yang";
 	public static final String JSON = ".json";
@@ -35,7 +35,7 @@ import io.etcd.jetcd.KV;
 import io.etcd.jetcd.common.exception.ClosedClientException;
 import io.etcd.jetcd.kv.DeleteResponse;
 import io.etcd.jetcd.kv.GetResponse;
-import io.etcd.jetcd.lease.LeaseGrantResponse;
+import io.etcd.jetcd.kv.PutResponse;
 import io.etcd.jetcd.options.GetOption;
 import io.etcd.jetcd.options.PutOption;
 import io.prometheus.client.Counter;
@@ -101,38 +101,63 @@ public class EtcdUtil {
 	}
 
 	public void putChangeSet(String keyString, String diffNode) {
+		putChangeSetAsync(keyString, diffNode).join();
+	}
+
+	/**
+	 * Grants the change-set lease and puts the change-set without blocking the
+	 * caller.
+	 * 
+	 * @return completes with true once pushed, false if the push failed; never
+	 *         completes exceptionally
+	 */
+	public CompletableFuture<Boolean> putChangeSetAsync(String keyString, String diffNode) {
 
 		Client client = getClient();
-		if (client != null) {
-
-			ByteSequence key = ByteSequence.from(keyString.getBytes());
-			ByteSequence value = ByteSequence.from(diffNode.getBytes());
-			long ttl = 180;
-			try {
-				ttl = Long.parseLong((String) UpdateConfigHelper.configJson.get("changeSetLease"));
-			} catch (ClassCastException e) {
-				ttl = ((int) UpdateConfigHelper.configJson.get("changeSetLease"));
-			}
-			LOG.debug("TTL lease value: " + ttl);
-			CompletableFuture<LeaseGrantResponse> lease = client.getLeaseClient().grant(ttl);
-
-			PutOption putOption = null;
-			try {
-				putOption = PutOption.newBuilder().withLeaseId(lease.get().getID()).build();
-				changeSetPushAttempts.inc();
-				client.getKVClient().put(key, value, putOption).get();
+		if (client == null)
+			return CompletableFuture.completedFuture(false);
+
+		ByteSequence key = ByteSequence.from(keyString.getBytes());
+		ByteSequence value = ByteSequence.from(diffNode.getBytes());
+		long ttl = 180;
+		try {
+			ttl = Long.parseLong((String) UpdateConfigHelper.configJson.get("changeSetLease"));
+		} catch (ClassCastException e) {
+			ttl = ((int) UpdateConfigHelper.configJson.get("changeSetLease"));
+		}
+		LOG.debug("TTL lease value: " + ttl);
+
+		CompletableFuture<PutResponse> put;
+		try {
+			changeSetPushAttempts.inc();
+			put = client.getLeaseClient().grant(ttl).thenCompose(lease -> client.getKVClient().put(key, value,
+					PutOption.newBuilder().withLeaseId(lease.getID()).build()));
+		} catch (ClosedClientException e) {
+			put = new CompletableFuture<>();
+			put.completeExceptionally(e);
+		}
+
+		return put.<Boolean>handle((response, e) -> {
+			if (e == null) {
 				LOG.info(Constants.ACTIVITY + Constants.UPDATE + "Successfully pushed change-set: " + keyString
 						+ ", Diff:" + diffNode);
 				NotificationUtil.sendEvent("CmaasChangeSetPushSuccess", getManagedObjects(keyString, diffNode));
-
-			} catch (ClosedClientException | InterruptedException | ExecutionException e) {
-				LOG.error(e.getMessage(), e);
-				changeSetPushFailed.inc();
-				NotificationUtil.sendEvent("CmaasChangeSetPushFailure", getManagedObjects(keyString, diffNode));
-				LOG.info(Constants.ACTIVITY + Constants.UPDATE + "Failed to push change-set: " + keyString + ", Diff:"
-						+ diffNode);
+				return true;
 			}
-		}
+
+			LOG.error(e.getMessage(), e);
+			changeSetPushFailed.inc();
+			NotificationUtil.sendEvent("CmaasChangeSetPushFailure", getManagedObjects(keyString, diffNode));
+			LOG.info(Constants.ACTIVITY + Constants.UPDATE + "Failed to push change-set: " + keyString + ", Diff:"
+					+ diffNode);
+			return false;
+
+		}).exceptionally(e -> {
+
+			// reporting the result failed, callers still get one
+			LOG.error("Unable to report change-set push: " + keyString + ", " + e.getMessage(), e);
+			return false;
+		});
 	}
 
 	private ArrayList<KeyValueBean> getManagedObjects(String keyString, String diffNode) {
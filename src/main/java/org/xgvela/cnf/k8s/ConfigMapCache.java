@@ -0,0 +1,343 @@
+// Copyright 2020 Mavenir
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.xgvela.cnf.k8s;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import org.xgvela.cnf.Constants;
+import org.xgvela.cnf.util.MetricsUtil;
+
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapList;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+
+/**
+ * Management ConfigMaps of all namespaces kept in memory, listed once and then
+ * followed by a watch (listed again whenever the watch closes). Management
+ * ConfigMaps are marked by annotations, which the API server cannot select on,
+ * so every ConfigMap is listed and watched but only management ones are kept;
+ * a label selector can narrow down the list and watch as well. Until the first
+ * list is in, and for ConfigMaps not kept, reads go to the API server.
+ * ConfigMaps written by CMaaS are served as written until the watch has seen
+ * that resourceVersion, so a read after an own update never returns the
+ * previous version. Reads following a watch event can wait for the cache to
+ * reach the resourceVersion of the event.
+ */
+@Component
+public class ConfigMapCache {
+
+	private static final Logger LOG = LogManager.getLogger(ConfigMapCache.class);
+
+	private static final Counter readsTotal = MetricsUtil.addCounter("cmaas_configmap_cache_reads_total",
+			"ConfigMap reads by source", new String[] { "source" });
+	private static final Gauge cacheSize = MetricsUtil.addGauge("cmaas_configmap_cache_size",
+			"Management ConfigMaps held by the cache");
+
+	@Autowired
+	private K8sClient k8sClient;
+
+	@Value("${cmaas.k8s.configmap-cache.sync-timeout-ms:60000}")
+	private long syncTimeoutMs;
+
+	@Value("${cmaas.k8s.configmap-cache.catch-up-ms:2000}")
+	private long catchUpMs;
+
+	// key=value[,key=value], must match every management configmap; empty for all
+	@Value("${cmaas.k8s.configmap-cache.labels:}")
+	private String labels;
+
+	private Map<String, String> selector = Collections.emptyMap();
+
+	// <namespace/name: management configmap>
+	private final Map<String, ConfigMap> store = new ConcurrentHashMap<>();
+
+	// <namespace/name: configmap written by cmaas, not yet seen by the watch>
+	private final Map<String, ConfigMap> written = new ConcurrentHashMap<>();
+
+	// latest resourceVersion seen by the list or the watch
+	private volatile long resourceVersion = -1;
+
+	private volatile boolean synced = false;
+
+	// starts following configmaps, waits until the initial list is in
+	public void init() {
+		selector = parseLabels(labels);
+		LOG.info(selector.isEmpty() ? "Caching management ConfigMaps of all ConfigMaps"
+				: "Caching management ConfigMaps with labels: " + selector);
+
+		cacheSize.setChild(new Gauge.Child() {
+			@Override
+			public double get() {
+				return store.size();
+			}
+		});
+
+		Thread follower = new Thread(this::follow, "configmap-cache");
+		follower.setDaemon(true);
+		follower.start();
+
+		long deadline = System.currentTimeMillis() + syncTimeoutMs;
+		while (!synced && System.currentTimeMillis() < deadline) {
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		LOG.info("ConfigMap cache synced: " + synced + ", resourceVersion: " + resourceVersion);
+	}
+
+	/**
+	 * @return configmap, null if it does not exist
+	 */
+	public ConfigMap get(String namespace, String name) {
+		if (synced) {
+			String key = key(namespace, name);
+			ConfigMap own = written.get(key);
+			if (own != null) {
+				readsTotal.labels("written").inc();
+				return own;
+			}
+
+			ConfigMap cmap = store.get(key);
+			if (cmap != null) {
+				readsTotal.labels("cache").inc();
+				return cmap;
+			}
+		}
+
+		// not a management configmap, or not there at all
+		readsTotal.labels("api").inc();
+		return k8sClient.getClient().configMaps().inNamespace(namespace).withName(name).get();
+	}
+
+	/**
+	 * @return management configmaps in the namespace
+	 */
+	public List<ConfigMap> list(String namespace) {
+		if (!synced) {
+			readsTotal.labels("api").inc();
+			return k8sClient.getClient().configMaps().inNamespace(namespace).withLabels(selector).list().getItems()
+					.stream().filter(ConfigMapCache::isManaged).collect(Collectors.toList());
+		}
+
+		readsTotal.labels("cache").inc();
+		return withWritten(store.values().stream()
+				.filter(cmap -> namespace.equals(cmap.getMetadata().getNamespace())).collect(Collectors.toList()));
+	}
+
+	public List<ConfigMap> listByNf(String namespace, String nfId) {
+		return listByNf(namespace, nfId, null);
+	}
+
+	/**
+	 * @param resourceVersion minimum version the cache must have seen, else the
+	 *                        API server is asked; null for any
+	 * @return management configmaps in the namespace annotated with the NF id, of
+	 *         any xgvela
+	 */
+	public List<ConfigMap> listByNf(String namespace, String nfId, String resourceVersion) {
+		if (!synced || !awaitVersion(resourceVersion)) {
+			readsTotal.labels("api").inc();
+			return k8sClient.getClient().configMaps().inNamespace(namespace).withLabels(selector).list().getItems()
+					.stream().filter(cmap -> isOfNf(cmap, nfId)).collect(Collectors.toList());
+		}
+
+		readsTotal.labels("cache").inc();
+		return withWritten(store.values().stream()
+				.filter(cmap -> namespace.equals(cmap.getMetadata().getNamespace()) && isOfNf(cmap, nfId))
+				.collect(Collectors.toList()));
+	}
+
+	// configmap as returned by an update of cmaas
+	public void written(ConfigMap cmap) {
+		if (cmap == null || !synced || !isManaged(cmap))
+			return;
+
+		String key = key(cmap.getMetadata().getNamespace(), cmap.getMetadata().getName());
+		ConfigMap cached = store.get(key);
+		if (cached == null || isOlder(cached, cmap))
+			written.put(key, cmap);
+	}
+
+	// list, then watch from the listed version until the watch closes
+	private void follow() {
+		while (true) {
+			try {
+				ConfigMapList list = k8sClient.getClient().configMaps().inAnyNamespace().withLabels(selector).list();
+
+				Map<String, ConfigMap> managed = new ConcurrentHashMap<>();
+				list.getItems().stream().filter(ConfigMapCache::isManaged).forEach(
+						cmap -> managed.put(key(cmap.getMetadata().getNamespace(), cmap.getMetadata().getName()), cmap));
+				store.keySet().retainAll(managed.keySet());
+				store.putAll(managed);
+				managed.values().forEach(this::seen);
+				seenVersion(list.getMetadata().getResourceVersion());
+				synced = true;
+
+				CountDownLatch closed = new CountDownLatch(1);
+				Watch watch = k8sClient.getClient().configMaps().inAnyNamespace().withLabels(selector)
+						.watch(list.getMetadata().getResourceVersion(), new Watcher<ConfigMap>() {
+
+							@Override
+							public void eventReceived(Action action, ConfigMap cmap) {
+								onEvent(action, cmap);
+							}
+
+							@Override
+							public void onClose(KubernetesClientException cause) {
+								if (cause != null)
+									LOG.info("ConfigMap cache watch closed, listing again: " + cause.getMessage());
+								closed.countDown();
+							}
+						});
+
+				closed.await();
+				watch.close();
+
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (Exception e) {
+				LOG.error("ConfigMap cache list/watch failed: " + e.getMessage(), e);
+				try {
+					Thread.sleep(1000);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	private void onEvent(Watcher.Action action, ConfigMap cmap) {
+		if (Watcher.Action.ERROR.equals(action))
+			return;
+
+		String key = key(cmap.getMetadata().getNamespace(), cmap.getMetadata().getName());
+		if (Watcher.Action.DELETED.equals(action) || !isManaged(cmap)) {
+			store.remove(key);
+			written.remove(key);
+			TmaasAnnotation.evict(cmap);
+		} else {
+			store.put(key, cmap);
+			seen(cmap);
+		}
+		seenVersion(cmap.getMetadata().getResourceVersion());
+	}
+
+	// waits (bounded) for the cache to reach the resourceVersion
+	private boolean awaitVersion(String resourceVersion) {
+		if (resourceVersion == null)
+			return true;
+
+		try {
+			long version = Long.parseLong(resourceVersion);
+			long deadline = System.currentTimeMillis() + catchUpMs;
+			while (this.resourceVersion < version) {
+				if (System.currentTimeMillis() >= deadline)
+					return false;
+				Thread.sleep(20);
+			}
+			return true;
+
+		} catch (NumberFormatException e) {
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private void seenVersion(String version) {
+		try {
+			resourceVersion = Math.max(resourceVersion, Long.parseLong(version));
+		} catch (NumberFormatException e) {
+			LOG.debug("Non-numeric resourceVersion: " + version);
+		}
+	}
+
+	// cache caught up with own write
+	private void seen(ConfigMap cmap) {
+		String key = key(cmap.getMetadata().getNamespace(), cmap.getMetadata().getName());
+		written.computeIfPresent(key, (k, own) -> isOlder(cmap, own) ? own : null);
+	}
+
+	private List<ConfigMap> withWritten(List<ConfigMap> cmaps) {
+		if (written.isEmpty())
+			return cmaps;
+
+		return cmaps.stream().map(cmap -> {
+			ConfigMap own = written.get(key(cmap.getMetadata().getNamespace(), cmap.getMetadata().getName()));
+			return own == null ? cmap : own;
+		}).collect(Collectors.toList());
+	}
+
+	private static boolean isOfNf(ConfigMap cmap, String nfId) {
+		if (!isManaged(cmap))
+			return false;
+
+		TmaasAnnotation tmaas = TmaasAnnotation.of(cmap);
+		return tmaas != null && nfId.equals(tmaas.getNfId());
+	}
+
+	// config management enabled and tmaas annotated, see K8sUtil.isEditable
+	private static boolean isManaged(ConfigMap cmap) {
+		Map<String, String> annotations = cmap.getMetadata().getAnnotations();
+		return annotations != null && "enabled".equals(annotations.get(Constants.CONFIG_MGMT))
+				&& annotations.containsKey(Constants.ANN_TMAAS);
+	}
+
+	private static Map<String, String> parseLabels(String labels) {
+		Map<String, String> selector = new LinkedHashMap<>();
+		for (String label : labels.split(",")) {
+			String[] pair = label.trim().split("=", 2);
+			if (pair.length == 2 && !pair[0].trim().isEmpty())
+				selector.put(pair[0].trim(), pair[1].trim());
+		}
+		return selector;
+	}
+
+	// resourceVersions are etcd revisions in practice, any other is taken as newer
+	private static boolean isOlder(ConfigMap cmap, ConfigMap than) {
+		try {
+			return Long.parseLong(cmap.getMetadata().getResourceVersion()) < Long
+					.parseLong(than.getMetadata().getResourceVersion());
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	private static String key(String namespace, String name) {
+		return namespace + "/" + name;
+	}
+}
@@ -0,0 +1,217 @@
+// Copyright 2020 Mavenir
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.xgvela.cnf.k8s;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import org.xgvela.cnf.Constants;
+import org.xgvela.cnf.util.MetricsUtil;
+import org.xgvela.model.ConfigMapEvent;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import io.fabric8.kubernetes.client.Watcher;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+
+/**
+ * Bounded FIFO of ConfigMap watch events which coalesces redundant events for
+ * the same configmap (name/namespace) while they are still waiting:
+ * <ul>
+ * <li>a newer event replaces a queued event of the same action, a pending
+ * upgrade trigger (mutate annotation) is kept</li>
+ * <li>DELETED cancels all queued ADDED/MODIFIED events of the configmap and is
+ * queued in their place</li>
+ * </ul>
+ * When full, {@link #put(ConfigMapEvent)} blocks the watcher thread, which
+ * pauses the watch instead of dropping events. Events are taken in order per
+ * dispatch key, events of a key that is not ready stay in the buffer.
+ */
+public class ConfigMapEventBuffer {
+
+	private static final Logger LOG = LogManager.getLogger(ConfigMapEventBuffer.class);
+
+	private static final Counter eventsCoalesced = MetricsUtil.addCounter("cmaas_configmap_events_coalesced_total",
+			"Number of ConfigMap events merged into an already queued event", new String[] { "action" });
+	private static final Counter eventsDropped = MetricsUtil.addCounter("cmaas_configmap_events_dropped_total",
+			"Number of ConfigMap events not queued for processing", new String[] { "action" });
+	private static final Gauge eventsQueued = MetricsUtil.addGauge("cmaas_configmap_events_queued",
+			"Number of ConfigMap events waiting to be processed");
+
+	private final int capacity;
+
+	private final Deque<Entry> entries = new ArrayDeque<>();
+
+	// <(configmap/namespace): latest queued entry>
+	private final Map<String, Entry> latest = new HashMap<>();
+
+	private int size = 0;
+
+	public ConfigMapEventBuffer(int capacity) {
+		this.capacity = capacity;
+	}
+
+	public synchronized void put(ConfigMapEvent event) throws InterruptedException {
+		Watcher.Action action = event.getAction();
+		if (!Watcher.Action.ADDED.equals(action) && !Watcher.Action.MODIFIED.equals(action)
+				&& !Watcher.Action.DELETED.equals(action)) {
+			eventsDropped.labels(String.valueOf(action)).inc();
+			return;
+		}
+
+		String key = getKey(event.getConfigMap());
+		Entry queued = latest.get(key);
+
+		if (queued != null) {
+			if (queued.event.getAction().equals(action)) {
+
+				// newer state, keeping the pending upgrade trigger if it does not carry it
+				ConfigMap queuedCmap = queued.event.getConfigMap();
+				if (isMutated(queuedCmap) && !isMutated(event.getConfigMap()))
+					event = new ConfigMapEvent(action,
+							new ConfigMapBuilder(event.getConfigMap()).editMetadata()
+									.addToAnnotations(Constants.ANN_MUTATE,
+											queuedCmap.getMetadata().getAnnotations().get(Constants.ANN_MUTATE))
+									.endMetadata().build());
+				queued.event = event;
+
+				eventsCoalesced.labels(action.name()).inc();
+				LOG.debug("Coalesced " + action + " event for ConfigMap: " + key);
+				return;
+			}
+
+			if (Watcher.Action.DELETED.equals(action)) {
+
+				// configmap is gone, pending adds/modifies have nothing left to do
+				for (Entry entry : entries) {
+					if (entry.cancelled || !entry.key.equals(key)
+							|| Watcher.Action.DELETED.equals(entry.event.getAction()))
+						continue;
+
+					cancel(entry);
+					eventsCoalesced.labels(entry.event.getAction().name()).inc();
+					LOG.debug("Cancelled queued " + entry.event.getAction() + " event for deleted ConfigMap: " + key);
+				}
+			}
+		}
+
+		while (size >= capacity) {
+			LOG.debug("ConfigMap event buffer full, pausing watch");
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				eventsDropped.labels(action.name()).inc();
+				throw e;
+			}
+		}
+
+		Entry entry = new Entry(key, event);
+		entries.addLast(entry);
+		latest.put(key, entry);
+		size++;
+		eventsQueued.set(size);
+		notifyAll();
+	}
+
+	/**
+	 * Takes the oldest event whose dispatch key is ready, waits while there is
+	 * none. Once an event of a key is passed over, later events of that key are as
+	 * well, so events of one key keep their order.
+	 * 
+	 * @param keyOf dispatch key of an event
+	 * @param ready whether an event of the key can be dispatched now
+	 */
+	public synchronized ConfigMapEvent take(Function<ConfigMapEvent, String> keyOf, Predicate<String> ready)
+			throws InterruptedException {
+		while (true) {
+			Set<String> passed = new HashSet<>();
+			Iterator<Entry> iterator = entries.iterator();
+			while (iterator.hasNext()) {
+				Entry entry = iterator.next();
+				if (entry.cancelled) {
+					iterator.remove();
+					continue;
+				}
+
+				String key = keyOf.apply(entry.event);
+				if (passed.contains(key))
+					continue;
+
+				if (!ready.test(key)) {
+					passed.add(key);
+					continue;
+				}
+
+				iterator.remove();
+				if (latest.get(entry.key) == entry)
+					latest.remove(entry.key);
+
+				size--;
+				eventsQueued.set(size);
+				notifyAll();
+				return entry.event;
+			}
+			wait();
+		}
+	}
+
+	// readiness of a dispatch key changed
+	public synchronized void signal() {
+		notifyAll();
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	private void cancel(Entry entry) {
+		entry.cancelled = true;
+		if (latest.get(entry.key) == entry)
+			latest.remove(entry.key);
+		size--;
+		eventsQueued.set(size);
+		notifyAll();
+	}
+
+	private static boolean isMutated(ConfigMap configMap) {
+		return configMap.getMetadata().getAnnotations() != null
+				&& configMap.getMetadata().getAnnotations().containsKey(Constants.ANN_MUTATE);
+	}
+
+	private static String getKey(ConfigMap configMap) {
+		return configMap.getMetadata().getName() + "/" + configMap.getMetadata().getNamespace();
+	}
+
+	private static class Entry {
+		private final String key;
+		private ConfigMapEvent event;
+		private boolean cancelled = false;
+
+		private Entry(String key, ConfigMapEvent event) {
+			this.key = key;
+			this.event = event;
+		}
+	}
+}
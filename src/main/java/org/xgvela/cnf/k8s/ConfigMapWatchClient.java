@@ -50,6 +50,9 @@ public class ConfigMapWatchClient {
     @Autowired
     ConfigMapWatchProcessor cMapProcessor;
 
+    @Autowired
+    private ConfigMapCache configMapCache;
+
     @Async
     public void init()  {
         UpdateConfigHelper.initCmaasConfig();
@@ -57,6 +60,9 @@ public class ConfigMapWatchClient {
         LOG.info("Starting Mutator");
         mutator.init();
 
+        LOG.info("Starting ConfigMap cache");
+        configMapCache.init();
+
         LOG.info(Constants.ACTIVITY + Constants.WATCH + "Initiating discovery of ConfigMaps-");
         cMapProcessor.start();
 
@@ -70,7 +76,8 @@ public class ConfigMapWatchClient {
                     try {
                         if (k8s.isEditable(configMap)) {
                             LOG.debug("enqueuing: configmap : "+ configMap.getMetadata().getName());
-                            ConfigMapWatchProcessor.queue.add(new ConfigMapEvent(action, configMap));
+                            // blocks while the buffer is full, pausing the watch
+                            ConfigMapWatchProcessor.queue.put(new ConfigMapEvent(action, configMap));
                         }
                     } catch (Exception e) {
                         ConfigMapWatchProcessor.initLog("Error while processing ConfigMap: " + configMap.getMetadata().getName() + " in Namespace: "
@@ -17,14 +17,15 @@ package org.xgvela.cnf.k8s;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.JsonNodeFactory;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.xgvela.cnf.Constants;
 import org.xgvela.cnf.netconf.NetconfUtil;
+import org.xgvela.cnf.netconf.SchemaLoader;
+import org.xgvela.cnf.netconf.YangCompiler;
 import org.xgvela.cnf.etcd.EtcdUtil;
 import org.xgvela.cnf.notification.KeyValueBean;
 import org.xgvela.cnf.notification.NotificationUtil;
 import org.xgvela.cnf.util.ConfigUtil;
+import org.xgvela.cnf.util.KeyedExecutor;
 import org.xgvela.cnf.util.MetricsUtil;
 import org.xgvela.cnf.util.SubscriptionManager;
 import org.xgvela.cnf.util.Utils;
@@ -36,24 +37,28 @@ import org.xgvela.model.ConfigMapEvent;
 import io.fabric8.kubernetes.api.model.ConfigMap;
 import io.fabric8.kubernetes.client.Watcher;
 import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -66,21 +71,28 @@ public class ConfigMapWatchProcessor {
 			.addCounter("cmaas_configmodel_onboard_attempts_total", "Total number of models found");
 	private static final Counter onboardFailureTotal = MetricsUtil.addCounter("cmaas_configmodel_onboard_failure_total",
 			"Total number of models found");
+	private static final Gauge eventShardQueueDepth = MetricsUtil.addGauge("cmaas_configmap_event_shard_queue_depth",
+			"Number of ConfigMap events waiting per processing shard", new String[] { "shard" });
 
 	private static final String DN_PREFIX = String.valueOf(System.getenv("DN_PREFIX"));
 	private static final String NF_READY = "NFMgmtIntfReady";
 	private static final String NF_CHANGED = "NFMgmtIntfChanged";
+	private static final int SHARD_CAPACITY = 4;
 
 	private static final ObjectMapper MAPPER = new ObjectMapper();
 
-	public static Map<String, ConfigMapMetadata> cmapPerNfId = new HashMap<>();
-	public static AtomicBoolean schemaLoadFlag = new AtomicBoolean();
+	public static Map<String, ConfigMapMetadata> cmapPerNfId = new ConcurrentHashMap<>();
 
-	public static List<String> configMapNamespace = new ArrayList<>();
+	public static Set<String> configMapNamespace = ConcurrentHashMap.newKeySet();
 
-	public static BlockingQueue<ConfigMapEvent> queue = new ArrayBlockingQueue<>(500);
+	public static ConfigMapEventBuffer queue = new ConfigMapEventBuffer(500);
+
+	// events are processed on per-namespace shards, so readiness is tracked per worker thread
+	public static ThreadLocal<Boolean> nfMgmtIntfFlag = ThreadLocal.withInitial(() -> true);
+
+	// yang rewrite (sed) runs across the whole model directory, keep it exclusive
+	private static final Object YANG_WRITE_LOCK = new Object();
 
-	public static boolean nfMgmtIntfFlag = true;
 	public static JsonNode selfTmaaSDetails = null;
 	public static String selfNfId = "xgvela1";
 	public static String selfXGVelaId = "xgvela1";
@@ -91,14 +103,25 @@ public class ConfigMapWatchProcessor {
 	private EtcdUtil etcd;
 
 	@Autowired
-	private K8sClient k8sClient;
+	private ConfigMapCache configMapCache;
 
 	@Autowired
 	private NetconfUtil netconf;
 
+	@Autowired
+	private YangCompiler yangCompiler;
+
+	@Autowired
+	private SchemaLoader schemaLoader;
+
 	@Autowired
 	private K8sUtil k8s;
 
+	@Value("${cmaas.watch.workers:4}")
+	private int watchWorkers;
+
+	private KeyedExecutor eventExecutor;
+
 	@Async
 	public void start() {
 		//consuming messages until exit message is received
@@ -108,11 +131,26 @@ public class ConfigMapWatchProcessor {
 		meUserLabel = DN_PREFIX + ",ManagedElement=me-" + selfXGVelaId;
 
 		LOG.info("ManagedElement Label: " + meUserLabel + ", Self Nf Id: " + selfNfId);
+
+		// events of one namespace stay ordered on one shard, other NFs onboard in parallel;
+		// shards hold only a few events so the rest wait (and coalesce) in the buffer,
+		// events are only taken for shards with room so a busy NF does not stall the others
+		eventExecutor = new KeyedExecutor("cmap-event", watchWorkers, SHARD_CAPACITY, eventShardQueueDepth);
 		while (true) {
 			try {
-				ConfigMapEvent msg = queue.take();
+				ConfigMapEvent msg = queue.take(event -> event.getConfigMap().getMetadata().getNamespace(),
+						eventExecutor::hasRoom);
 				LOG.debug("dequeuing: the config map watcher : "+ msg.getConfigMap().getMetadata().getName());
-				processEvent(msg.getAction(), msg.getConfigMap());
+				eventExecutor.execute(msg.getConfigMap().getMetadata().getNamespace(), () -> {
+
+					// the shard has room again
+					queue.signal();
+					try {
+						processEvent(msg.getAction(), msg.getConfigMap());
+					} catch (Exception e) {
+						LOG.error(e.getMessage(), e.getCause());
+					}
+				});
 			} catch (Exception e) {
 				LOG.error(e.getMessage(), e.getCause());
 			}
@@ -132,27 +170,30 @@ public class ConfigMapWatchProcessor {
 		// filter out yangs
 		Predicate<Entry<String, String>> isYang = entry -> entry.getKey().endsWith(Constants.YANG);
 
-		// write yangs
-		cmapData.entrySet().stream().filter(isYang).forEach(entry -> {
+		synchronized (YANG_WRITE_LOCK) {
 
-			String yangFile = entry.getKey();
-			String yangModel = entry.getValue();
+			// write yangs
+			cmapData.entrySet().stream().filter(isYang).forEach(entry -> {
 
-			LOG.debug("Writing Yang: " + yangFile);
-			ConfModelMetadata confModel = mapOfConfModels.get(yangFile);
+				String yangFile = entry.getKey();
+				String yangModel = entry.getValue();
 
-			String moduleName = confModel.getModuleName();
-			yangModel = Utils.updateYangModel(yangModel, confModel, nfName);
+				LOG.debug("Writing Yang: " + yangFile);
+				ConfModelMetadata confModel = mapOfConfModels.get(yangFile);
 
-			// write file with moduleName
-			Utils.writeYang(moduleName, yangModel);
-			initLog("Written yang file: " + yangFile + ", ConfigMap: " + cmapName + ", Namespace: "
-					+ cmapNamespace);
+				String moduleName = confModel.getModuleName();
+				yangModel = Utils.updateYangModel(yangModel, confModel, nfName);
 
-			compileYangs.put(yangFile, moduleName);
-		});
+				// write file with moduleName
+				Utils.writeYang(moduleName, yangModel);
+				initLog("Written yang file: " + yangFile + ", ConfigMap: " + cmapName + ", Namespace: "
+						+ cmapNamespace);
+
+				compileYangs.put(yangFile, moduleName);
+			});
 
-		Utils.findAndReplaceModuleNames(compileYangs, nfName);
+			Utils.findAndReplaceModuleNames(compileYangs, nfName);
+		}
 		LOG.debug("Yangs To Be Compiled: " + compileYangs.toString());
 
 		return compileYangs;
@@ -169,10 +210,12 @@ public class ConfigMapWatchProcessor {
 		// filter out modules
 		Predicate<String> isModule = key -> !mapOfConfModels.get(key).getYangNamespace().equals(Constants.NONE);
 
-		// compile modules
-		compiledYangs.entrySet().stream().map(entry -> entry.getKey()).filter(isModule).forEach(yangKey -> {
+		// compile modules concurrently, dependents after what they import
+		Map<String, String> modules = compiledYangs.entrySet().stream().filter(entry -> isModule.test(entry.getKey()))
+				.collect(Collectors.toMap(Entry::getKey, Entry::getValue));
+		onboardAttemptsTotal.inc(modules.size());
 
-			LOG.debug("Compiling Yang: " + yangKey);
+		yangCompiler.compile(modules).forEach((yangKey, compiled) -> {
 
 			String yangFile = Constants.YANG_FILE_PATH + mapOfConfModels.get(yangKey).getModuleName()
 					+ Constants.YANG;
@@ -180,8 +223,7 @@ public class ConfigMapWatchProcessor {
 			String fxsFile = Constants.FXS_FILE_PATH + mapOfConfModels.get(yangKey).getModuleName()
 					+ Constants.FXS;
 
-			onboardAttemptsTotal.inc();
-			if (netconf.compileYang(yangFile, fxsFile)) {
+			if (compiled) {
 
 				// compile success
 				initLog("Successfully Compiled yang file: " + yangFile + " to fxs: " + fxsFile
@@ -198,10 +240,9 @@ public class ConfigMapWatchProcessor {
 						getMgdObjs(yangKey, cmapName, cmapNamespace, nfName));
 
 				compiledYangs.remove(yangKey);
-				nfMgmtIntfFlag = false;
+				nfMgmtIntfFlag.set(false);
 			}
 		});
-		loadSchemas(cmapName, cmapNamespace, nfName);
 	}
 
 
@@ -220,14 +261,14 @@ public class ConfigMapWatchProcessor {
 						LOG.info("Deleting compiled yang models (fxs) for yang file: " + entry.getKey()
 								+ " in ConfigMap: " + cmapName + ", Namespace: " + cmapNamespace);
 
-						Utils.deleteFxs(entry.getValue().getModuleName());
+						schemaLoader.remove(entry.getValue().getModuleName());
 
 						// add to deletion list for internal map update
 						deletedYangNamespaces.add(entry.getValue().getYangNamespace());
 					});
 
 			// load schemas
-			loadSchemas(cmapName, cmapNamespace, nfName);
+			loadSchemas(Collections.singletonList(cmapName), cmapNamespace, nfName);
 
 			// update internal maps
 			Utils.confModelPerConfigmap.remove(cmapName + "/" + cmapNamespace);
@@ -242,21 +283,30 @@ public class ConfigMapWatchProcessor {
 	}
 
 
-	// loading fxs file
-	private void loadSchemas(String cmapName, String cmapNamespace, String nfName) {
-		schemaLoadFlag.set(true);
-		if (netconf.loadSchemas(cmapName, cmapNamespace, nfName, 1)) {
+	// loading fxs files, configmaps loading together share one schema upgrade
+	private void loadSchemas(List<String> cmapNames, String cmapNamespace, String nfName) {
+		if (cmapNames.isEmpty())
+			return;
 
-			// success
-			initLog("Schemas loaded successfully.");
-		} else {
+		schemaLoader.load(cmapNamespace, nfName, cmapNames).forEach((cmapName, loaded) -> {
+			if (loaded) {
 
-			// failure
-			initLog("Failed to load schemas.");
-			NotificationUtil.sendEvent("CmaasSchemasLoadFailure", getMgdObjs(cmapName, cmapNamespace, nfName));
-			nfMgmtIntfFlag = false;
-		}
-		schemaLoadFlag.set(false);
+				// success
+				initLog("Schemas loaded successfully for ConfigMap: " + cmapName + ", Namespace: " + cmapNamespace);
+			} else {
+
+				// failure
+				initLog("Failed to load schemas for ConfigMap: " + cmapName + ", Namespace: " + cmapNamespace);
+				NotificationUtil.sendEvent("CmaasSchemasLoadFailure", getMgdObjs(cmapName, cmapNamespace, nfName));
+				nfMgmtIntfFlag.set(false);
+			}
+		});
+	}
+
+	// configmaps with freshly compiled yangs
+	private static List<String> getCompiledConfigMaps(Map<String, ConcurrentHashMap<String, String>> compiledPerCmap) {
+		return compiledPerCmap.entrySet().stream().filter(entry -> !entry.getValue().isEmpty()).map(Entry::getKey)
+				.collect(Collectors.toList());
 	}
 
 	private static void sleep(long secs) {
@@ -278,7 +328,7 @@ public class ConfigMapWatchProcessor {
 			}
 		} else {
 			initLog("Unable to load for key: " + jsonKey + ", ConfigMap: " + cmapName);
-			nfMgmtIntfFlag = false;
+			nfMgmtIntfFlag.set(false);
 		}
 	}
 	public static void initLog(String msg) {
@@ -338,6 +388,29 @@ public class ConfigMapWatchProcessor {
 		final Predicate<Entry<String, ConfModelMetadata>> isRootYang = entry -> !entry.getValue().getDataKey()
 				.equals(Constants.NONE);
 
+		// xml data of consecutive keys, pushed in a single NetConf RPC
+		final List<String> xmlData = new ArrayList<>();
+
+		// <json data key: REST push in flight>
+		final Map<String, CompletableFuture<ResponseEntity<String>>> jsonPushes = new LinkedHashMap<>();
+
+		// yangs are loaded in order, a key waits for the keys of the other kind before it
+		final Runnable flushXml = () -> {
+			if (xmlData.isEmpty())
+				return;
+
+			LOG.info("Making NetConf RPC for " + xmlData.size() + " Key(s), ConfigMap: [" + cmapName + "], Namespace: ["
+					+ cmapNamespace + "]");
+			netconf.push(xmlData);
+			xmlData.clear();
+		};
+
+		// independent yangs load concurrently, results are logged here
+		final Runnable flushJson = () -> {
+			jsonPushes.forEach((jsonDataKey, push) -> logResponse(push.join(), jsonDataKey, cmapName));
+			jsonPushes.clear();
+		};
+
 		// load data into netconf over REST/NetConf
 		final Consumer<Entry<String, ConfModelMetadata>> loadData = entry -> {
 
@@ -375,13 +448,16 @@ public class ConfigMapWatchProcessor {
 
 			if (datatype.equals(ConfigDatatype.XML)) {
 
-				LOG.info("Making NetConf RPC for Key: [" + Utils.getXmlFromJson(jsonDataKey) + "], ConfigMap: ["
+				LOG.info("Adding to NetConf RPC Key: [" + Utils.getXmlFromJson(jsonDataKey) + "], ConfigMap: ["
 						+ cmapName + "], Namespace: [" + cmapNamespace + "]");
 
-				netconf.push(configData);
+				flushJson.run();
+				xmlData.add(configData);
 
 			} else {
 
+				flushXml.run();
+
 				if (mapOfConfModels.get(yangKey).getRootType().equals(RootType.LIST)) {
 					try {
 						String rootName = mapOfConfModels.get(yangKey).getRootName();
@@ -389,19 +465,16 @@ public class ConfigMapWatchProcessor {
 						JsonNode elements = MAPPER.readTree(configData).get(rootName);
 
 						if (elements.isArray()) {
-							elements.forEach(element -> {
-								try {
-									ObjectNode node = JsonNodeFactory.instance.objectNode();
-									node.putArray(rootName).add(element);
-									final String data = MAPPER.writeValueAsString(node);
-
-									logResponse(netconf.push(cmapName, cmapNamespace, yangKey, data,
-											ConfigDatatype.JSON), jsonDataKey, cmapName);
-
-								} catch (JsonProcessingException e) {
-									LOG.error(e.getMessage(), e);
-								}
-							});
+							flushJson.run();
+							int failed = netconf.pushList(cmapName, cmapNamespace, yangKey, elements);
+							if (failed == 0) {
+								initLog("Config data loaded successfully for key: " + jsonDataKey + ", ConfigMap: "
+										+ cmapName);
+							} else {
+								initLog("Unable to load " + failed + " of " + elements.size() + " elements for key: "
+										+ jsonDataKey + ", ConfigMap: " + cmapName);
+								nfMgmtIntfFlag.set(false);
+							}
 						} else {
 							LOG.error(
 									"Wrong Json configuration defined for Yang, root object must be of Array type");
@@ -410,14 +483,16 @@ public class ConfigMapWatchProcessor {
 						LOG.error(e.getMessage(), e);
 					}
 				} else {
-					logResponse(netconf.push(cmapName, cmapNamespace, yangKey, configData, datatype), jsonDataKey,
-							cmapName);
+					jsonPushes.put(jsonDataKey, netconf.pushAsync(cmapName, cmapNamespace, yangKey, configData, datatype));
 				}
 			}
 		};
 
 		// process stream
 		mapOfConfModels.entrySet().stream().filter(isRootYang).filter(isCompiled).forEach(loadData);
+
+		flushJson.run();
+		flushXml.run();
 	}
 
 
@@ -428,16 +503,20 @@ public class ConfigMapWatchProcessor {
 		String globalCmapName = configMap.getMetadata().getName();
 		String namespace = configMap.getMetadata().getNamespace();
 
-		JsonNode tmaasNode = MAPPER.readTree(configMap.getMetadata().getAnnotations().get(Constants.ANN_TMAAS));
+		TmaasAnnotation tmaas = TmaasAnnotation.of(configMap);
+		if (tmaas == null) {
+			LOG.debug("No valid tmaas annotation on ConfigMap: " + globalCmapName + ", Namespace: " + namespace);
+			return;
+		}
 
 		// only consider configmaps with matching xgvelaId
-		if (!selfXGVelaId.equals(tmaasNode.get(Constants.XGVELA_ID).asText())) {
+		if (!selfXGVelaId.equals(tmaas.getXgvelaId())) {
 			LOG.debug("xgvelaId does not match for ConfigMap: " + globalCmapName + ", Namespace: " + namespace);
 			return;
 		}
 
-		String nfName = tmaasNode.get(Constants.NF_ID).asText();
-		String nfType = tmaasNode.get(Constants.NF_TYPE).asText();
+		String nfName = tmaas.getNfId();
+		String nfType = tmaas.getNfType();
 		String nfLabel = Utils.getNfLabel(nfName);
 		String nfUid = Utils.getUUID(nfLabel);
 
@@ -451,20 +530,12 @@ public class ConfigMapWatchProcessor {
 
 		// predicate to filter configmaps for an NfId
 		final Predicate<ConfigMap> isValidConfigMap = cmap -> {
-			try {
-				JsonNode tmaas = MAPPER.readTree(cmap.getMetadata().getAnnotations().get(Constants.ANN_TMAAS));
-
-				return tmaas.get(Constants.NF_ID).asText().equals(nfName)
-						&& tmaas.get(Constants.XGVELA_ID).asText().equals(selfXGVelaId);
-
-			} catch (IOException e) {
-				LOG.error(e.getMessage());
-			}
-			return false;
+			TmaasAnnotation cmapTmaas = TmaasAnnotation.of(cmap);
+			return cmapTmaas != null && cmapTmaas.isOf(nfName, selfXGVelaId);
 		};
 
-		// consumer to add configmaps
-		final Consumer<ConfigMap> addConfigMap = cmap -> {
+		// function to add configmaps, returns the compiled yangs (schemas are loaded for all configmaps at once)
+		final Function<ConfigMap, ConcurrentHashMap<String, String>> addConfigMap = cmap -> {
 
 			String cmapName = cmap.getMetadata().getName();
 
@@ -476,7 +547,17 @@ public class ConfigMapWatchProcessor {
 
 			if (!compiledYangs.isEmpty()) {
 				compileModels(compiledYangs, cmapName, namespace, nfName);
-				loadConfig(compiledYangs, cmapName, namespace, data);
+			}
+			return compiledYangs;
+		};
+
+		// consumer to load data of added configmaps, once schemas are loaded
+		final BiConsumer<ConfigMap, ConcurrentHashMap<String, String>> addConfigData = (cmap, compiledYangs) -> {
+
+			String cmapName = cmap.getMetadata().getName();
+
+			if (!compiledYangs.isEmpty()) {
+				loadConfig(compiledYangs, cmapName, namespace, cmap.getData());
 			}
 
 			k8s.removeAnnotation(cmapName, namespace, Constants.ANN_INIT);
@@ -498,14 +579,23 @@ public class ConfigMapWatchProcessor {
 				}
 
 				// default -> NF is ready
-				nfMgmtIntfFlag = true;
+				nfMgmtIntfFlag.set(true);
 
 				// add all editable, valid configmaps for an NfId
-				k8sClient.getWatcherClient().configMaps().inNamespace(namespace).list().getItems().stream().filter(isEditableConfigMap)
-						.filter(isValidConfigMap).forEach(addConfigMap);
+				List<ConfigMap> nfConfigMaps = configMapCache
+						.listByNf(namespace, nfName, configMap.getMetadata().getResourceVersion()).stream()
+						.filter(isEditableConfigMap).filter(isValidConfigMap).collect(Collectors.toList());
+
+				Map<String, ConcurrentHashMap<String, String>> addedYangs = new LinkedHashMap<>();
+				nfConfigMaps.forEach(cmap -> addedYangs.put(cmap.getMetadata().getName(), addConfigMap.apply(cmap)));
+
+				// one schema load for the whole NF
+				loadSchemas(getCompiledConfigMaps(addedYangs), namespace, nfName);
+
+				nfConfigMaps.forEach(cmap -> addConfigData.accept(cmap, addedYangs.get(cmap.getMetadata().getName())));
 
 				// send notification
-				if (nfMgmtIntfFlag) {
+				if (nfMgmtIntfFlag.get()) {
 
 					String nfSwVersion = "v0";
 					if (configMap.getMetadata().getAnnotations().containsKey(Constants.NF_VERSION)) {
@@ -537,13 +627,14 @@ public class ConfigMapWatchProcessor {
 				upgradeLog("NF was upgraded !!! Reprocessing all mgmt configmaps, nfId: " + nfName);
 
 				/*
-				 * This consumer has 5 processes, invoked on top of filtered list of configmaps
+				 * This function has 4 processes, invoked on top of filtered list of configmaps
 				 * (1) update internal map / write new yangs (2) delete fxs for deleted yangs /
-				 * update map (3) remove deleted namespaces from map (4) compile yangs, if any
-				 * and load data for newly compiled yangs (5) remove mutate annotation
+				 * update map (3) remove deleted namespaces from map (4) compile yangs, if any.
+				 * Once schemas of all configmaps are loaded, (5) load data for newly compiled
+				 * yangs and (6) remove mutate annotation
 				 */
 
-				final Consumer<ConfigMap> modifiedConfigMap = cmap -> {
+				final Function<ConfigMap, ConcurrentHashMap<String, String>> modifiedConfigMap = cmap -> {
 
 					String cmapName = cmap.getMetadata().getName();
 
@@ -594,7 +685,7 @@ public class ConfigMapWatchProcessor {
 								ConfModelMetadata confModel = entry.getValue();
 
 								upgradeLog("Deleting fxs for yang file: " + yangFile);
-								Utils.deleteFxs(confModel.getModuleName());
+								schemaLoader.remove(confModel.getModuleName());
 
 								deletedYangNamespaces.add(confModel.getYangNamespace());
 								deletedYangFiles.add(yangFile);
@@ -614,15 +705,27 @@ public class ConfigMapWatchProcessor {
 						Utils.configmapsPerYangNamespace.remove(yangNamespace);
 					});
 
-					// 4. compile yangs and load data
+					// 4. compile yangs
 					if (!compiledYangs.isEmpty()) {
-						upgradeLog("4. Compiling yangs and loading data");
+						upgradeLog("4. Compiling yangs");
 						compileModels(compiledYangs, cmapName, namespace, nfName);
-						loadConfig(compiledYangs, cmapName, namespace, data);
 					}
+					return compiledYangs;
+				};
+
+				final BiConsumer<ConfigMap, ConcurrentHashMap<String, String>> modifiedConfigData = (cmap,
+						compiledYangs) -> {
 
-					// 5. remove mutate annotation
-					upgradeLog("5. Removing mutate annotation: " + Constants.ANN_MUTATE);
+					String cmapName = cmap.getMetadata().getName();
+
+					// 5. load data
+					if (!compiledYangs.isEmpty()) {
+						upgradeLog("5. Loading data for ConfigMap: [" + cmapName + "]");
+						loadConfig(compiledYangs, cmapName, namespace, cmap.getData());
+					}
+
+					// 6. remove mutate annotation
+					upgradeLog("6. Removing mutate annotation: " + Constants.ANN_MUTATE);
 					k8s.removeAnnotation(cmapName, namespace, Constants.ANN_MUTATE);
 
 					upgradeLog("Finished upgrading ConfigMap: [" + cmapName + "] Namespace: [" + namespace
@@ -635,7 +738,8 @@ public class ConfigMapWatchProcessor {
 				sleep(5);
 
 				// collect upgraded configmaps
-				List<ConfigMap> configMaps = k8sClient.getWatcherClient().configMaps().inNamespace(namespace).list().getItems().stream()
+				List<ConfigMap> configMaps = configMapCache
+						.listByNf(namespace, nfName, configMap.getMetadata().getResourceVersion()).stream()
 						.filter(isEditableConfigMap).filter(isValidConfigMap).filter(isUpgraded)
 						.collect(Collectors.toList());
 
@@ -647,13 +751,19 @@ public class ConfigMapWatchProcessor {
 				upgradeLog(configMaps.size() + " ConfigMaps found eligible for upgrade");
 
 				// default -> NF is ready
-				nfMgmtIntfFlag = true;
+				nfMgmtIntfFlag.set(true);
 
 				// process
-				configMaps.stream().forEach(modifiedConfigMap);
+				Map<String, ConcurrentHashMap<String, String>> upgradedYangs = new LinkedHashMap<>();
+				configMaps.forEach(cmap -> upgradedYangs.put(cmap.getMetadata().getName(), modifiedConfigMap.apply(cmap)));
+
+				// one schema load for the whole NF
+				loadSchemas(getCompiledConfigMaps(upgradedYangs), namespace, nfName);
+
+				configMaps.forEach(cmap -> modifiedConfigData.accept(cmap, upgradedYangs.get(cmap.getMetadata().getName())));
 
 				// send changed notification
-				if (nfMgmtIntfFlag) {
+				if (nfMgmtIntfFlag.get()) {
 
 					String nfSwVersion = "v0";
 					if (configMap.getMetadata().getAnnotations().containsKey(Constants.NF_VERSION)) {
@@ -14,12 +14,25 @@
 
 package org.xgvela.cnf.k8s;
 
+import java.io.IOException;
+import java.util.List;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.stereotype.Component;
 
+import org.xgvela.cnf.util.MetricsUtil;
+
+import io.fabric8.kubernetes.client.Config;
+import io.fabric8.kubernetes.client.ConfigBuilder;
 import io.fabric8.kubernetes.client.DefaultKubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.utils.HttpClientUtils;
+import io.prometheus.client.Counter;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
 
 @Component
 public class K8sClient {
@@ -28,12 +41,15 @@ public class K8sClient {
 
 	private static String URL = "https://" + String.valueOf(System.getenv("K8S_SVC_FQDN"));
 
+	private static final Counter apiRequestsTotal = MetricsUtil.addCounter("cmaas_k8s_api_requests_total",
+			"Requests sent to the Kubernetes API server", new String[] { "method", "resource" });
+
 	private static KubernetesClient client;
 	private static KubernetesClient watcherClient;
 
 	private void newClient() {
 		LOG.info("Initializing Kubernetes client with URL: " + URL);
-		client = new DefaultKubernetesClient(URL);
+		client = newKubernetesClient();
 	}
 
 	public KubernetesClient getClient() {
@@ -45,7 +61,7 @@ public class K8sClient {
 
 	private void newWatcherClient() {
 		LOG.info("Initializing Kubernetes client with URL: " + URL);
-		watcherClient = new DefaultKubernetesClient(URL);
+		watcherClient = newKubernetesClient();
 	}
 
 	public KubernetesClient getWatcherClient() {
@@ -54,4 +70,28 @@ public class K8sClient {
 		}
 		return watcherClient;
 	}
+
+	// client counting every API request
+	private static KubernetesClient newKubernetesClient() {
+		Config config = new ConfigBuilder().withMasterUrl(URL).build();
+		OkHttpClient httpClient = HttpClientUtils.createHttpClient(config).newBuilder()
+				.addInterceptor(K8sClient::countRequest).build();
+		return new DefaultKubernetesClient(httpClient, config);
+	}
+
+	private static okhttp3.Response countRequest(Interceptor.Chain chain) throws IOException {
+		Request request = chain.request();
+		String method = "true".equals(request.url().queryParameter("watch")) ? "WATCH" : request.method();
+		apiRequestsTotal.labels(method, getResource(request.url())).inc();
+		return chain.proceed(request);
+	}
+
+	// /api/v1/[namespaces/<ns>/]<resource>/..., /apis/<group>/<version>/[namespaces/<ns>/]<resource>/...
+	private static String getResource(HttpUrl url) {
+		List<String> segments = url.pathSegments();
+		int index = segments.isEmpty() ? 0 : "apis".equals(segments.get(0)) ? 3 : 2;
+		if (segments.size() > index + 2 && "namespaces".equals(segments.get(index)))
+			index += 2;
+		return index < segments.size() ? segments.get(index) : "unknown";
+	}
 }
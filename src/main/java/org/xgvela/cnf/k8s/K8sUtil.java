@@ -16,10 +16,10 @@ package org.xgvela.cnf.k8s;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
@@ -50,7 +50,7 @@ public class K8sUtil {
 	private static final String POD_ID = String.valueOf(System.getenv("K8S_POD_ID"));
 	private static final ObjectMapper MAPPER = new ObjectMapper();
 
-	public static Set<String> editableConfigMaps = new HashSet<>();
+	public static Set<String> editableConfigMaps = ConcurrentHashMap.newKeySet();
 
 	@Autowired
 	private K8sClient k8sClient;
@@ -153,6 +153,7 @@ public class K8sUtil {
 		String name = microservice + "-cim-" + svcVersion + "-mgmt-cfg";
 		String nameExcludingVersion = microservice + "-cim" + "-mgmt-cfg";
 
+		// any configmap, not only management ones, read from the API server
 		if (k8sClient.getClient().configMaps().inNamespace(namespace).withName(name).get() != null) {
 			LOG.debug("ConfigMap: [" + name + "] exists in Namespace: [" + namespace + "]");
 			return true;
@@ -0,0 +1,135 @@
+// Copyright 2020 Mavenir
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.xgvela.cnf.k8s;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.xgvela.cnf.Constants;
+import org.xgvela.cnf.util.MetricsUtil;
+
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.prometheus.client.Counter;
+
+/**
+ * Parsed tmaas annotation ({@link Constants#ANN_TMAAS}) of a ConfigMap. The
+ * annotation is parsed once per ConfigMap uid and resourceVersion, later
+ * lookups of the same version return the cached descriptor.
+ */
+public final class TmaasAnnotation {
+
+	private static final Logger LOG = LogManager.getLogger(TmaasAnnotation.class);
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static final Counter lookupsTotal = MetricsUtil.addCounter("cmaas_tmaas_annotation_lookups_total",
+			"Lookups of parsed tmaas annotations by result", new String[] { "result" });
+
+	// <uid: annotation of the last seen version>
+	private static final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+	private final String nfId;
+	private final String xgvelaId;
+	private final String nfType;
+
+	private TmaasAnnotation(JsonNode tmaas) {
+		this.nfId = text(tmaas, Constants.NF_ID);
+		this.xgvelaId = text(tmaas, Constants.XGVELA_ID);
+		this.nfType = text(tmaas, Constants.NF_TYPE);
+	}
+
+	/**
+	 * @return annotation of the configmap, null if absent or not valid json
+	 */
+	public static TmaasAnnotation of(ConfigMap cmap) {
+		String uid = cmap.getMetadata().getUid();
+		String resourceVersion = cmap.getMetadata().getResourceVersion();
+
+		Entry entry = uid == null ? null : cache.get(uid);
+		if (entry != null && entry.resourceVersion.equals(resourceVersion)) {
+			lookupsTotal.labels("hit").inc();
+			return entry.annotation;
+		}
+
+		lookupsTotal.labels("miss").inc();
+		TmaasAnnotation annotation = parse(cmap);
+		if (uid != null && resourceVersion != null)
+			cache.put(uid, new Entry(resourceVersion, annotation));
+		return annotation;
+	}
+
+	// configmap deleted
+	public static void evict(ConfigMap cmap) {
+		if (cmap.getMetadata().getUid() != null)
+			cache.remove(cmap.getMetadata().getUid());
+	}
+
+	private static TmaasAnnotation parse(ConfigMap cmap) {
+		Map<String, String> annotations = cmap.getMetadata().getAnnotations();
+		if (annotations == null || !annotations.containsKey(Constants.ANN_TMAAS))
+			return null;
+
+		try {
+			JsonNode tmaas = MAPPER.readTree(annotations.get(Constants.ANN_TMAAS));
+			return tmaas != null && tmaas.isObject() ? new TmaasAnnotation(tmaas) : null;
+		} catch (IOException e) {
+			LOG.error("Invalid tmaas annotation on ConfigMap: " + cmap.getMetadata().getName() + ", Namespace: "
+					+ cmap.getMetadata().getNamespace() + ", " + e.getMessage());
+			return null;
+		}
+	}
+
+	private static String text(JsonNode tmaas, String field) {
+		JsonNode value = tmaas.get(field);
+		return value == null || value.isNull() ? null : value.asText();
+	}
+
+	public String getNfId() {
+		return nfId;
+	}
+
+	public String getXgvelaId() {
+		return xgvelaId;
+	}
+
+	public String getNfType() {
+		return nfType;
+	}
+
+	// belongs to the NF of this xgvela
+	public boolean isOf(String nfId, String xgvelaId) {
+		return nfId != null && nfId.equals(this.nfId) && xgvelaId != null && xgvelaId.equals(this.xgvelaId);
+	}
+
+	@Override
+	public String toString() {
+		return "TmaasAnnotation [nfId=" + nfId + ", xgvelaId=" + xgvelaId + ", nfType=" + nfType + "]";
+	}
+
+	private static class Entry {
+		private final String resourceVersion;
+		private final TmaasAnnotation annotation;
+
+		private Entry(String resourceVersion, TmaasAnnotation annotation) {
+			this.resourceVersion = resourceVersion;
+			this.annotation = annotation;
+		}
+	}
+}
@@ -51,6 +51,13 @@ public class DataProvider {
 	@Value("${netconf.port}")
 	private int netconfPort;
 
+	// worker threads (each with its own worker socket), 0 serves all callbacks on the read thread
+	@Value("${cmaas.dp.workers:4}")
+	private int dpWorkers;
+
+	@Value("${cmaas.dp.max-workers:16}")
+	private int dpMaxWorkers;
+
 	@Autowired
 	private ConfigUpdateCallback endIndicatorCallback;
 
@@ -67,7 +74,8 @@ public class DataProvider {
 					+ netconfHost);
 
 			Socket dpSocket = new Socket(netconfHost, netconfPort);
-			final Dp dp = new Dp(DP, dpSocket);
+			final Dp dp = dpWorkers > 0 ? new Dp(DP, dpSocket, true, dpWorkers, Math.max(dpWorkers, dpMaxWorkers))
+					: new Dp(DP, dpSocket);
 //			dp.setErrorVerbosity(ErrorVerbosity.TRACE);
 			dp.registerAnnotatedCallbacks(endIndicatorCallback);
 			dp.registerAnnotatedCallbacks(stateIndicatorCallback);
@@ -92,7 +100,7 @@ public class DataProvider {
 			});
 			dpTh.start();
 			LOG.info(Constants.ACTIVITY + Constants.DP + DP + " Created DataProvider connection to Netconf, Host:"
-					+ netconfHost);
+					+ netconfHost + ", Workers: " + dpWorkers);
 
 		} catch (Exception exp) {
 			LOG.error(exp.getMessage(), exp);
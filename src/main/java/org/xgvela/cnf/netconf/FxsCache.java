@@ -0,0 +1,198 @@
+// Copyright 2020 Mavenir
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.xgvela.cnf.netconf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import org.xgvela.cnf.Constants;
+import org.xgvela.cnf.util.MetricsUtil;
+import org.xgvela.cnf.util.Utils;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+
+/**
+ * On-disk cache of compiled schemas (.fxs), addressed by a SHA-256 of the
+ * compiler version and the rewritten yang text of a module together with all
+ * the modules/submodules it transitively imports or includes. Entries are
+ * evicted least-recently-used first once the cache grows beyond its size limit.
+ */
+@Component
+public class FxsCache {
+
+	private static final Logger LOG = LogManager.getLogger(FxsCache.class);
+
+	private static final Counter cacheHits = MetricsUtil.addCounter("cmaas_fxs_cache_hits_total",
+			"Number of yang compilations skipped by reusing a cached fxs");
+	private static final Counter cacheMisses = MetricsUtil.addCounter("cmaas_fxs_cache_misses_total",
+			"Number of yang compilations not found in the fxs cache");
+	private static final Counter cacheEvictions = MetricsUtil.addCounter("cmaas_fxs_cache_evictions_total",
+			"Number of fxs removed from the cache to stay within its size limit");
+	private static final Gauge cacheSize = MetricsUtil.addGauge("cmaas_fxs_cache_size_bytes",
+			"Total size of the fxs cache on disk");
+
+	@Autowired
+	private NetconfUtil netconf;
+
+	@Value("${cmaas.fxs.cache.max-bytes:268435456}")
+	private long maxBytes;
+
+	/**
+	 * @return cache key for the module, null if it cannot be computed
+	 */
+	public String getKey(String moduleName) {
+
+		// <module/submodule name: yang text>, sorted for a stable digest
+		Map<String, String> sources = new TreeMap<>();
+		collectSources(moduleName, sources, new HashSet<>());
+
+		String compilerVersion = netconf.getCompilerVersion();
+		if (compilerVersion == null || !sources.containsKey(moduleName))
+			return null;
+
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(compilerVersion.getBytes(StandardCharsets.UTF_8));
+			sources.forEach((name, text) -> {
+				digest.update((byte) 0);
+				digest.update(name.getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) 0);
+				digest.update(text.getBytes(StandardCharsets.UTF_8));
+			});
+
+			StringBuilder key = new StringBuilder();
+			for (byte b : digest.digest())
+				key.append(String.format("%02x", b));
+			return key.toString();
+
+		} catch (NoSuchAlgorithmException e) {
+			LOG.error(e.getMessage(), e);
+		}
+		return null;
+	}
+
+	/**
+	 * Copies the cached fxs for the key to fxsFile.
+	 *
+	 * @return true on cache hit
+	 */
+	public boolean restore(String key, String fxsFile) {
+		if (key == null || !Files.exists(getPath(key))) {
+			cacheMisses.inc();
+			return false;
+		}
+
+		Path cached = getPath(key);
+		try {
+			Files.copy(cached, Paths.get(fxsFile), StandardCopyOption.REPLACE_EXISTING);
+
+			// mark as recently used
+			Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+			cacheHits.inc();
+			LOG.debug("Fxs cache hit: " + key + " -> " + fxsFile);
+			return true;
+
+		} catch (IOException e) {
+			LOG.error("Unable to restore cached fxs: " + cached, e);
+		}
+		cacheMisses.inc();
+		return false;
+	}
+
+	// add freshly compiled fxs to the cache
+	public void store(String key, String fxsFile) {
+		if (key == null)
+			return;
+
+		Path cached = getPath(key);
+		try {
+			Files.createDirectories(cached.getParent());
+
+			// copy then rename, so readers never see a partial file
+			Path tmp = Files.createTempFile(cached.getParent(), key, ".tmp");
+			Files.copy(Paths.get(fxsFile), tmp, StandardCopyOption.REPLACE_EXISTING);
+			Files.move(tmp, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			LOG.debug("Fxs cached: " + fxsFile + " -> " + key);
+
+		} catch (IOException e) {
+			LOG.error("Unable to cache fxs: " + fxsFile, e);
+			return;
+		}
+		evict();
+	}
+
+	private synchronized void evict() {
+		File[] files = new File(Constants.FXS_CACHE_PATH).listFiles((dir, name) -> name.endsWith(Constants.FXS));
+		if (files == null)
+			return;
+
+		long total = Arrays.stream(files).mapToLong(File::length).sum();
+		if (total > maxBytes) {
+
+			// oldest (least recently used) first
+			Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+			for (File file : files) {
+				if (total <= maxBytes)
+					break;
+
+				long length = file.length();
+				if (file.delete()) {
+					total -= length;
+					cacheEvictions.inc();
+					LOG.debug("Evicted cached fxs: " + file.getName());
+				}
+			}
+		}
+		cacheSize.set(total);
+	}
+
+	private static Path getPath(String key) {
+		return Paths.get(Constants.FXS_CACHE_PATH + key + Constants.FXS);
+	}
+
+	private static void collectSources(String moduleName, Map<String, String> sources, Set<String> visited) {
+		if (!visited.add(moduleName))
+			return;
+
+		String yangModel = Utils.readYang(moduleName);
+		if (yangModel == null)
+			return;
+
+		sources.put(moduleName, yangModel);
+		Utils.getYangImports(yangModel).forEach(module -> collectSources(module, sources, visited));
+		Utils.getYangIncludes(yangModel).forEach(submodule -> collectSources(submodule, sources, visited));
+	}
+}
@@ -0,0 +1,252 @@
+// Copyright 2020 Mavenir
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.xgvela.cnf.netconf;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import org.xgvela.cnf.util.MetricsUtil;
+import com.tailf.conf.ConfException;
+import com.tailf.maapi.Maapi;
+import com.tailf.maapi.MaapiUserSessionFlag;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+
+/**
+ * Small pool of long-lived, authenticated Maapi user sessions. Sessions are
+ * checked before being handed out and replaced if the connection is gone.
+ * Schemas are (re)loaded only when the {@link SchemaGeneration} changed. A
+ * schema upgrade ends every other user session, so the upgrading session is
+ * handed back through {@link #upgraded(Maapi)}.
+ */
+@Component
+public class MaapiPool {
+
+	private static final Logger LOG = LogManager.getLogger(MaapiPool.class);
+	private static final String NETCONF_CONTEXT_NAME = "cfg-svc";
+
+	private static final Gauge poolSessions = MetricsUtil.addGauge("cmaas_maapi_pool_sessions",
+			"Number of pooled Maapi sessions", new String[] { "state" });
+	private static final Histogram acquireDuration = MetricsUtil.addHistogram(
+			"cmaas_maapi_pool_acquire_duration_seconds", "Time taken to get a Maapi session from the pool", 0.001,
+			0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30);
+	private static final Counter reconnectsTotal = MetricsUtil.addCounter("cmaas_maapi_reconnects_total",
+			"Number of Maapi sessions opened to replace a broken or discarded one");
+
+	@Value("${netconf.host}")
+	private String netconfHost;
+
+	@Value("${netconf.port}")
+	private int netconfPort;
+
+	@Value("${netconf.username}")
+	private String netconfUsername;
+
+	@Value("${cmaas.maapi.pool.size:1}")
+	private int poolSize;
+
+	@Value("${cmaas.maapi.pool.acquire-timeout-ms:30000}")
+	private long acquireTimeoutMs;
+
+	private final BlockingQueue<Maapi> idle = new LinkedBlockingQueue<>();
+	private final AtomicInteger opened = new AtomicInteger();
+	private final AtomicInteger busy = new AtomicInteger();
+
+	// schemas are reloaded once per generation
+	@Autowired
+	private SchemaGeneration schemaGeneration;
+
+	private volatile long loadedGeneration = 0;
+
+	/**
+	 * @return healthy session with current schemas, to be handed back with
+	 *         {@link #release(Maapi)} or {@link #discard(Maapi)}
+	 */
+	public Maapi acquire() throws IOException {
+		Histogram.Timer timer = acquireDuration.startTimer();
+		try {
+			Maapi maapi = idle.poll();
+
+			if (maapi == null && opened.incrementAndGet() <= poolSize) {
+				maapi = open();
+
+			} else {
+				if (maapi == null) {
+					opened.decrementAndGet();
+					maapi = idle.poll(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+					if (maapi == null)
+						throw new IOException("Timed out waiting for a Maapi session");
+				}
+
+				if (!isHealthy(maapi)) {
+					LOG.info("Pooled Maapi session is broken, reconnecting");
+					close(maapi);
+					reconnectsTotal.inc();
+					maapi = open();
+				}
+			}
+
+			busy.incrementAndGet();
+			updateGauges();
+			loadSchemas(maapi);
+			return maapi;
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for a Maapi session", e);
+		} finally {
+			timer.observeDuration();
+		}
+	}
+
+	public void release(Maapi maapi) {
+		if (maapi == null)
+			return;
+
+		busy.decrementAndGet();
+		idle.add(maapi);
+		updateGauges();
+	}
+
+	/**
+	 * Hands back the session that committed a schema upgrade. Its user session is
+	 * re-established on the same connection and the new schemas are loaded on it,
+	 * the idle sessions were ended by the upgrade and are dropped.
+	 */
+	public void upgraded(Maapi maapi) throws IOException {
+		evictIdle();
+		try {
+			maapi.endUserSession();
+			maapi.startUserSession(netconfUsername, InetAddress.getLocalHost(), NETCONF_CONTEXT_NAME,
+					new String[] { netconfUsername }, MaapiUserSessionFlag.PROTO_TCP);
+			reloadSchemas(maapi, schemaGeneration.loadingGeneration());
+		} catch (ConfException | IOException e) {
+			discard(maapi);
+			throw new IOException("Unable to re-establish Maapi session after upgrade", e);
+		}
+		release(maapi);
+	}
+
+	// drop a session that may be in a bad state (e.g. after a failed transaction)
+	public void discard(Maapi maapi) {
+		if (maapi == null)
+			return;
+
+		busy.decrementAndGet();
+		opened.decrementAndGet();
+		close(maapi);
+		updateGauges();
+	}
+
+	// open a new session, its slot is already counted in opened
+	private Maapi open() throws IOException {
+		Socket maapiSock = null;
+		try {
+			maapiSock = new Socket(netconfHost, netconfPort);
+			Maapi maapi = new Maapi(maapiSock);
+			maapi.startUserSession(netconfUsername, InetAddress.getLocalHost(), NETCONF_CONTEXT_NAME,
+					new String[] { netconfUsername }, MaapiUserSessionFlag.PROTO_TCP);
+			LOG.debug("Opened Maapi session to: " + netconfHost + ":" + netconfPort);
+			return maapi;
+
+		} catch (Exception e) {
+			LOG.error(e.getMessage(), e);
+			closeSocket(maapiSock);
+		}
+		opened.decrementAndGet();
+		updateGauges();
+		throw new IOException("Unable to open Maapi session to: " + netconfHost + ":" + netconfPort);
+	}
+
+	private void loadSchemas(Maapi maapi) throws IOException {
+		long generation = schemaGeneration.get();
+		if (loadedGeneration == generation)
+			return;
+
+		try {
+			reloadSchemas(maapi, generation);
+		} catch (ConfException | IOException e) {
+			discard(maapi);
+			throw new IOException("Unable to load schemas", e);
+		}
+	}
+
+	private synchronized void reloadSchemas(Maapi maapi, long generation) throws ConfException, IOException {
+		maapi.reloadSchemas();
+		loadedGeneration = generation;
+		LOG.debug("Loaded schemas, generation: " + generation);
+	}
+
+	// idle sessions ended by a schema upgrade
+	private void evictIdle() {
+		Maapi maapi;
+		while ((maapi = idle.poll()) != null) {
+			opened.decrementAndGet();
+			close(maapi);
+		}
+		updateGauges();
+	}
+
+	private static boolean isHealthy(Maapi maapi) {
+		Socket socket = maapi.getSocket();
+		if (socket == null || socket.isClosed() || !socket.isConnected())
+			return false;
+
+		try {
+			maapi.getMyUserSession();
+			return true;
+		} catch (Exception e) {
+			LOG.debug("Maapi health check failed: " + e.getMessage());
+		}
+		return false;
+	}
+
+	private static void close(Maapi maapi) {
+		try {
+			maapi.endUserSession();
+		} catch (Exception e) {
+			LOG.debug(e.getMessage());
+		}
+		closeSocket(maapi.getSocket());
+	}
+
+	private static void closeSocket(Socket maapiSock) {
+		if (null != maapiSock) {
+			try {
+				maapiSock.close();
+			} catch (IOException ioExp) {
+				LOG.error(ioExp.getMessage(), ioExp);
+			}
+		}
+	}
+
+	private void updateGauges() {
+		poolSessions.labels("busy").set(busy.get());
+		poolSessions.labels("idle").set(idle.size());
+	}
+}
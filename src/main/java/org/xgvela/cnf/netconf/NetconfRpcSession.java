@@ -0,0 +1,197 @@
+// Copyright 2020 Mavenir
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.xgvela.cnf.netconf;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import org.xgvela.cnf.util.MetricsUtil;
+import com.tailf.jnc.Device;
+import com.tailf.jnc.DeviceUser;
+import com.tailf.jnc.JNCException;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+
+/**
+ * Long-lived NETCONF (SSH) session used for raw RPCs. Connects on first use and
+ * is kept alive by a periodic no-op RPC. A session idle for a while is probed
+ * with the same no-op RPC before use and replaced if the probe fails. An RPC is
+ * never sent twice: once it may have been written, any failure is thrown and
+ * the session is closed on transport errors.
+ */
+@Component
+public class NetconfRpcSession {
+
+	private static final Logger LOG = LogManager.getLogger(NetconfRpcSession.class);
+	private static final int DEFAULT_JNC_READ_TIMEOUT = 2 * 60 * 1000; // 2 mins
+	private static final String cmaasSession = "cmaas_rpc";
+
+	// empty subtree filter, selects nothing
+	private static final String KEEPALIVE_RPC = "<rpc xmlns=\"urn:ietf:params:xml:ns:netconf:base:1.0\" message-id=\"0\">"
+			+ "<get-config><source><running/></source><filter type=\"subtree\"/></get-config></rpc>";
+
+	private static final Histogram connectDuration = MetricsUtil.addHistogram(
+			"cmaas_netconf_connect_duration_seconds", "Time taken to connect and open a NETCONF session", 0.05, 0.1,
+			0.25, 0.5, 1, 2, 5, 10);
+	private static final Histogram rpcDuration = MetricsUtil.addHistogram("cmaas_netconf_rpc_duration_seconds",
+			"Time taken by a NETCONF RPC on an open session", 0.01, 0.05, 0.1, 0.25, 0.5, 1, 2, 5, 10, 30);
+	private static final Counter rpcFailureTotal = MetricsUtil.addCounter("cmaas_netconf_rpc_failure_total",
+			"Number of NETCONF RPCs that could not be sent or answered");
+
+	@Value("${netconf.host}")
+	private String netconfHost;
+
+	@Value("${netconf.ssh.port:2022}")
+	private int sshPort;
+
+	@Value("${cmaas.netconf.keepalive-seconds:60}")
+	private long keepaliveSeconds;
+
+	@Value("${cmaas.netconf.probe-after-idle-ms:5000}")
+	private long probeAfterIdleMs;
+
+	private Device device = null;
+
+	// last successful exchange on the session
+	private long lastUsed = 0;
+
+	private ScheduledExecutorService keepalive;
+
+	@PostConstruct
+	public void init() {
+		keepalive = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "netconf-keepalive");
+			thread.setDaemon(true);
+			return thread;
+		});
+		keepalive.scheduleWithFixedDelay(this::keepalive, keepaliveSeconds, keepaliveSeconds, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void destroy() {
+		keepalive.shutdownNow();
+		close();
+	}
+
+	/**
+	 * @return reply of the RPC
+	 * @throws JNCException for an rpc-error reply, or if the session failed
+	 */
+	public synchronized String rpc(String rpc) throws IOException, JNCException {
+		probe();
+		try {
+			return send(rpc);
+		} catch (IOException e) {
+			rpcFailureTotal.inc();
+			close();
+			throw e;
+		} catch (JNCException e) {
+			if (isClosed(e)) {
+				rpcFailureTotal.inc();
+				close();
+			}
+			throw e;
+		}
+	}
+
+	// stale connection found before the RPC is written, replaced by a fresh one
+	private void probe() {
+		if (device == null || System.currentTimeMillis() - lastUsed < probeAfterIdleMs)
+			return;
+
+		try {
+			send(KEEPALIVE_RPC);
+		} catch (Exception e) {
+			LOG.info("NETCONF session is broken, reconnecting: " + e.getMessage());
+			close();
+		}
+	}
+
+	private static boolean isClosed(JNCException e) {
+		return e.getErrorCode() == JNCException.SESSION_ALREADY_CLOSED;
+	}
+
+	private String send(String rpc) throws IOException, JNCException {
+		connect();
+		Histogram.Timer timer = rpcDuration.startTimer();
+		try {
+			String reply = device.getSession(cmaasSession).rpc(rpc).toXMLString();
+			lastUsed = System.currentTimeMillis();
+			return reply;
+		} finally {
+			timer.observeDuration();
+		}
+	}
+
+	private void connect() throws IOException, JNCException {
+		if (device != null)
+			return;
+
+		Device newDevice = new Device("cmaas", new DeviceUser("admin", "admin", "admin"), netconfHost, sshPort);
+		newDevice.setDefaultReadTimeout(DEFAULT_JNC_READ_TIMEOUT);
+
+		Histogram.Timer timer = connectDuration.startTimer();
+		try {
+			newDevice.connect("admin");
+			newDevice.newSession(cmaasSession);
+			device = newDevice;
+			LOG.info("Opened NETCONF session to: " + netconfHost + ":" + sshPort);
+		} catch (IOException | JNCException e) {
+			newDevice.close();
+			throw e;
+		} finally {
+			timer.observeDuration();
+		}
+	}
+
+	private synchronized void keepalive() {
+		if (device == null)
+			return;
+
+		try {
+			send(KEEPALIVE_RPC);
+		} catch (Exception e) {
+			LOG.info("NETCONF keepalive failed, closing session: " + e.getMessage());
+			close();
+		}
+	}
+
+	private synchronized void close() {
+		if (device == null)
+			return;
+
+		try {
+			LOG.info("Closing the device: " + netconfHost);
+			if (device.getSession(cmaasSession) != null) {
+				device.closeSession(cmaasSession);
+			}
+			device.close();
+		} catch (Exception e) {
+			LOG.error("Error while closing the device : " + netconfHost);
+		}
+		device = null;
+	}
+}
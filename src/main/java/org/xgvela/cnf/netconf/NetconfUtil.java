@@ -15,15 +15,23 @@
 package org.xgvela.cnf.netconf;
 
 import java.io.IOException;
-import java.net.InetAddress;
-import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.tomcat.util.codec.binary.Base64;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -33,8 +41,8 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
+import org.xgvela.cnf.ConfigServiceApplication;
 import org.xgvela.cnf.Constants;
-import org.xgvela.cnf.k8s.ConfigMapWatchProcessor;
 import org.xgvela.cnf.notification.KeyValueBean;
 import org.xgvela.cnf.notification.NotificationUtil;
 import org.xgvela.cnf.util.MetricsUtil;
@@ -42,21 +50,26 @@ import org.xgvela.cnf.util.Utils;
 import org.xgvela.cnf.util.Utils.ConfigDatatype;
 import org.xgvela.cnf.util.Utils.RootType;
 import org.xgvela.model.ConfModelMetadata;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tailf.conf.ConfException;
-import com.tailf.jnc.Device;
-import com.tailf.jnc.DeviceUser;
 import com.tailf.jnc.JNCException;
 import com.tailf.maapi.Maapi;
-import com.tailf.maapi.MaapiUserSessionFlag;
 
 import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
 
 @Component
 public class NetconfUtil {
 
 	private static final Logger LOG = LogManager.getLogger(NetconfUtil.class);
 	private static final String url = "http://localhost:8008/api/running";
-	private static final int DEFAULT_JNC_READ_TIMEOUT = 2 * 60 * 1000; // 2 mins
+	private static final String NETCONFC = "/netconf/bin/netconfc";
+
+	private static String compilerVersion = null;
+
+	private static final AtomicLong messageId = new AtomicLong();
 
 	private static final Counter configDataLoadAttemptsTotal = MetricsUtil.addCounter(
 			"cmaas_configdata_load_attempts_total",
@@ -64,6 +77,12 @@ public class NetconfUtil {
 	private static final Counter configDataLoadFailureTotal = MetricsUtil.addCounter(
 			"cmaas_configdata_load_failure_total",
 			"The number of times REST call has been made to load configuration data into a Netconf namespace and failed to do so successfully");
+	private static final Counter listElementsLoaded = MetricsUtil.addCounter("cmaas_configdata_list_elements_loaded_total",
+			"Number of list elements loaded into a Netconf namespace");
+	private static final Gauge listLoadThroughput = MetricsUtil.addGauge(
+			"cmaas_configdata_list_load_elements_per_second", "List elements loaded per second by the last list load");
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
 
 	@Value("${netconf.host}")
 	private String netconfHost;
@@ -77,101 +96,83 @@ public class NetconfUtil {
 	@Value("${netconf.password}")
 	private String netconfPassword;
 
+	@Value("${cmaas.http.netconf.max-connections:16}")
+	private int restWorkers;
+
+	@Value("${cmaas.list.load.chunk-bytes:262144}")
+	private int listChunkBytes;
+
+	@Value("${cmaas.list.load.max-chunk-bytes:1048576}")
+	private int listMaxChunkBytes;
+
 	@Autowired
+	@Qualifier(ConfigServiceApplication.NETCONF_REST)
 	private RestTemplate restTemplate;
 
-	public Maapi getMaapi() {
-		final String NETCONF_CONTEXT_NAME = "cfg-svc";
-		Socket maapiSock = null;
-		Maapi maapi = null;
-		try {
-			maapiSock = new Socket(netconfHost, netconfPort);
-			maapi = new Maapi(maapiSock);
-			maapi.startUserSession(netconfUsername, InetAddress.getLocalHost(), NETCONF_CONTEXT_NAME,
-					new String[] { netconfUsername }, MaapiUserSessionFlag.PROTO_TCP);
-			maapi.reloadSchemas();
+	@Autowired
+	private MaapiPool maapiPool;
 
-		} catch (Exception e) {
-			LOG.error(e.getMessage(), e);
-		}
-		return maapi;
-	}
+	@Autowired
+	private NetconfRpcSession rpcSession;
 
-	private static void closeSocket(Socket maapiSock) {
-		if (null != maapiSock) {
-			try {
-				maapiSock.close();
-			} catch (IOException ioExp) {
-				LOG.error(ioExp.getMessage(), ioExp);
-			}
-		}
+	@Autowired
+	private SchemaGeneration schemaGeneration;
+
+	@Value("${cmaas.schema.load.wait-timeout-ms:60000}")
+	private long schemaWaitTimeoutMs;
+
+	// runs REST pushes for independent yangs concurrently, one per pooled connection
+	private ExecutorService restExecutor;
+
+	@PostConstruct
+	public void init() {
+		AtomicInteger count = new AtomicInteger();
+		restExecutor = Executors.newFixedThreadPool(restWorkers, runnable -> {
+			Thread thread = new Thread(runnable, "netconf-rest-" + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
 	}
 
-	public boolean loadSchemas(String cmapName, String cmapNamespace, String nfId, int count) {
-		LOG.debug("Loading schemas, ConfigMap: " + cmapName + ", Namespace: " + cmapNamespace);
+	// one schema upgrade loading all fxs files present, see SchemaLoader
+	public void upgradeSchemas() throws ConfException, IOException {
+		LOG.debug("Upgrading schemas from: " + Constants.FXS_FILE_PATH);
 
-		// limit to 2 recursive calls
-		if (count > 2)
-			return false;
-
-		boolean status = false;
-		Maapi maapi = null;
+		Maapi maapi = maapiPool.acquire();
 		try {
-			maapi = getMaapi();
 			List<String> fxsPaths = new ArrayList<String>();
 			fxsPaths.add(Constants.FXS_FILE_PATH);
 			maapi.initUpgrade(10, Maapi.MAAPI_UPGRADE_KILL_ON_TIMEOUT);
 			maapi.performUpgrade(fxsPaths.toArray(new String[0]));
 			maapi.commitUpgrade();
-			maapi.reloadSchemas();
-			status = true;
-		} catch (ConfException exp) {
-
-			// mark NF as not ready
-			ConfigMapWatchProcessor.nfMgmtIntfFlag = false;
-			LOG.error(exp.getMessage(), exp);
-
+		} catch (ConfException | IOException exp) {
 			try {
-				if (maapi != null)
-					maapi.abortUpgrade();
+				maapi.abortUpgrade();
 			} catch (ConfException | IOException exp1) {
 				LOG.error(exp1.getMessage(), exp1);
 			}
-
-			NotificationUtil.sendEvent("CmaasSchemasLoadFailure", getMgdObjs(cmapName, cmapNamespace, nfId));
-			LOG.error("Schema load failed, please check yangs: Deleting all schema files (.fxs) of yangs in ConfigMap: "
-					+ cmapName + ", Namespace: " + cmapNamespace);
-
-			// delete all fxs
-			Utils.confModelPerConfigmap.get(cmapName + "/" + cmapNamespace).forEach((yangKey, yangModel) -> {
-				LOG.debug("Deleting schema for: " + yangKey);
-				Utils.deleteFxs(yangModel.getModuleName());
-			});
-
-			// recursive call
-			status = loadSchemas(cmapName, cmapNamespace, nfId, count + 1);
-		} catch (IOException e) {
-			LOG.error(e.getMessage(), e);
-		} finally {
-			if (maapi != null)
-				closeSocket(maapi.getSocket());
+			maapiPool.discard(maapi);
+			throw exp;
 		}
-		return status;
-	}
 
-	private static ArrayList<KeyValueBean> getMgdObjs(String cmapName, String namespace, String nfId) {
-		ArrayList<KeyValueBean> mgdObjs = new ArrayList<>();
-		mgdObjs.add(new KeyValueBean("config-map", cmapName));
-		mgdObjs.add(new KeyValueBean("namespace", namespace));
-		mgdObjs.add(new KeyValueBean("nf-id", nfId));
-		return mgdObjs;
+		// same connection, re-authenticated and with the new schemas loaded
+		maapiPool.upgraded(maapi);
 	}
 
 	public boolean compileYang(String yangFile, String fxsFile) {
-		String cmd = "/netconf/bin/netconfc -c " + yangFile + " -o " + fxsFile + " --yangpath /netconf/apps/config/model/";
+		String cmd = NETCONFC + " -c " + yangFile + " -o " + fxsFile + " --yangpath /netconf/apps/config/model/";
 		return Utils.exec(cmd);
 	}
 
+	// compiler version, part of the fxs cache key
+	public synchronized String getCompilerVersion() {
+		if (compilerVersion == null) {
+			compilerVersion = Utils.execForOutput(NETCONFC + " --version");
+			LOG.info("Yang compiler version: " + compilerVersion);
+		}
+		return compilerVersion;
+	}
+
 	public static String getAuthString(String userName, String password) {
 		String plainCreds = userName + ":" + password;
 		byte[] plainCredsBytes = plainCreds.getBytes();
@@ -190,10 +191,8 @@ public class NetconfUtil {
 			String netconfUrl = url + "/" + yangPrefix + ":" + rootName + "?deep";
 
 			// in case schema load is ongoing, wait
-			while (ConfigMapWatchProcessor.schemaLoadFlag.get()) {
-				LOG.info("Waiting for schema load to finish...");
-				Thread.sleep(500);
-			}
+			if (!schemaGeneration.awaitLoaded(schemaWaitTimeoutMs))
+				LOG.warn("Schema load still ongoing after " + schemaWaitTimeoutMs + "ms, reading anyway");
 
 			LOG.debug("Connecting to URL: [" + netconfUrl + "]");
 			response = restTemplate.exchange(netconfUrl, HttpMethod.GET, new HttpEntity<String>(headers), String.class);
@@ -233,27 +232,139 @@ public class NetconfUtil {
 
 		ResponseEntity<String> response = null;
 		try {
-			HttpHeaders headers = new HttpHeaders();
-			headers.add("Authorization", "Basic " + getAuthString(netconfUsername, netconfPassword));
-			headers.add("Content-Type", getHdr(datatype));
+			response = exchange(confModelMeta, configData, datatype);
+			NotificationUtil.sendEvent("CmaasConfigDataLoadSuccess", getMgdObjs(prefix, root));
 
-			HttpMethod method;
-			String netconfUrl = url + "/" + prefix + ":" + root;
+		} catch (Exception e) {
+			pushFailed(e, cmapName, yangFile, prefix, root);
+		}
+		return response;
+	}
 
-			if (confModelMeta.getRootType().equals(RootType.CONTAINER)) {
-				method = HttpMethod.PUT;
-			} else {
-				method = HttpMethod.PATCH;
-			}
+	public CompletableFuture<ResponseEntity<String>> pushAsync(String cmapName, String cmapNamespace, String yangFile,
+			String configData, ConfigDatatype datatype) {
+		return CompletableFuture.supplyAsync(() -> push(cmapName, cmapNamespace, yangFile, configData, datatype),
+				restExecutor);
+	}
+
+	/**
+	 * Loads the elements of a LIST rooted yang in chunks of at most
+	 * listChunkBytes of payload. A failing chunk is bisected down to the
+	 * elements which cannot be loaded; only those are reported. The chunk size
+	 * grows after successful chunks and shrinks after failed ones.
+	 *
+	 * @return number of elements which could not be loaded
+	 */
+	public int pushList(String cmapName, String cmapNamespace, String yangFile, JsonNode elements)
+			throws JsonProcessingException {
+
+		initL("Loading " + elements.size() + " list elements for yang file: " + yangFile + ", in ConfigMap: "
+				+ cmapName);
+
+		ConfModelMetadata confModelMeta = Utils.confModelPerConfigmap.get(cmapName + "/" + cmapNamespace).get(yangFile);
+
+		// serialize every element once, chunks are sized by utf-8 bytes
+		List<String> serialized = new ArrayList<>();
+		int[] sizes = new int[elements.size()];
+		for (JsonNode element : elements) {
+			String json = MAPPER.writeValueAsString(element);
+			sizes[serialized.size()] = json.getBytes(StandardCharsets.UTF_8).length;
+			serialized.add(json);
+		}
+
+		long start = System.nanoTime();
+		int chunkBytes = listChunkBytes;
+		int failed = 0;
+		int from = 0;
+
+		while (from < serialized.size()) {
+			int to = from;
+			int bytes = 0;
+			do {
+				bytes += sizes[to++] + 1;
+			} while (to < serialized.size() && bytes + sizes[to] <= chunkBytes);
+
+			int chunkFailed = pushChunk(cmapName, yangFile, confModelMeta, serialized.subList(from, to));
+			failed += chunkFailed;
+
+			// adapt to what netconf accepts
+			if (chunkFailed == 0)
+				chunkBytes = Math.min(chunkBytes * 2, listMaxChunkBytes);
+			else
+				chunkBytes = Math.max(chunkBytes / 2, 1);
+			from = to;
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		listElementsLoaded.inc(serialized.size() - failed);
+		if (seconds > 0)
+			listLoadThroughput.set((serialized.size() - failed) / seconds);
 
-			LOG.debug("Connecting to URL: [" + netconfUrl + "], Method: [" + method + "], ConfigData:\n" + configData);
-			response = restTemplate.exchange(netconfUrl, method, new HttpEntity<String>(configData, headers),
-					String.class);
+		LOG.debug("Loaded " + (serialized.size() - failed) + "/" + serialized.size() + " list elements in " + seconds
+				+ "s, yang file: " + yangFile + ", ConfigMap: " + cmapName);
+		return failed;
+	}
+
+	// number of elements that failed to load
+	private int pushChunk(String cmapName, String yangFile, ConfModelMetadata confModelMeta, List<String> chunk) {
+		String prefix = confModelMeta.getPrefix();
+		String root = confModelMeta.getRootName();
+
+		configDataLoadAttemptsTotal.inc();
+		try {
+			String configData = "{\"" + root + "\":[" + String.join(",", chunk) + "]}";
+			exchange(confModelMeta, configData, ConfigDatatype.JSON);
 			NotificationUtil.sendEvent("CmaasConfigDataLoadSuccess", getMgdObjs(prefix, root));
+			return 0;
 
 		} catch (HttpClientErrorException e) {
 
-			configDataLoadFailureTotal.inc();
+			// rejected data, bisect to find the faulty elements
+			if (chunk.size() == 1) {
+				LOG.error("Failed list element: " + chunk.get(0));
+				pushFailed(e, cmapName, yangFile, prefix, root);
+				return 1;
+			}
+			LOG.debug("Chunk of " + chunk.size() + " list elements rejected, bisecting: " + e.getMessage());
+
+		} catch (Exception e) {
+
+			// transport or server error, says nothing about the elements
+			LOG.error("Chunk of " + chunk.size() + " list elements failed: " + e.getMessage());
+			pushFailed(e, cmapName, yangFile, prefix, root);
+			return chunk.size();
+		}
+
+		int half = chunk.size() / 2;
+		return pushChunk(cmapName, yangFile, confModelMeta, chunk.subList(0, half))
+				+ pushChunk(cmapName, yangFile, confModelMeta, chunk.subList(half, chunk.size()));
+	}
+
+	private ResponseEntity<String> exchange(ConfModelMetadata confModelMeta, String configData,
+			ConfigDatatype datatype) {
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.add("Authorization", "Basic " + getAuthString(netconfUsername, netconfPassword));
+		headers.add("Content-Type", getHdr(datatype));
+
+		HttpMethod method;
+		String netconfUrl = url + "/" + confModelMeta.getPrefix() + ":" + confModelMeta.getRootName();
+
+		if (confModelMeta.getRootType().equals(RootType.CONTAINER)) {
+			method = HttpMethod.PUT;
+		} else {
+			method = HttpMethod.PATCH;
+		}
+
+		LOG.debug("Connecting to URL: [" + netconfUrl + "], Method: [" + method + "], ConfigData:\n" + configData);
+		return restTemplate.exchange(netconfUrl, method, new HttpEntity<String>(configData, headers), String.class);
+	}
+
+	private void pushFailed(Exception exp, String cmapName, String yangFile, String prefix, String root) {
+		configDataLoadFailureTotal.inc();
+
+		if (exp instanceof HttpClientErrorException) {
+			HttpClientErrorException e = (HttpClientErrorException) exp;
 			initL("Failed to load data for Yang file: " + yangFile + ", Prefix: " + prefix + ", Container: " + root
 					+ ", ConfigMap: " + cmapName + ", Status code: " + e.getRawStatusCode() + ", Response body: "
 					+ e.getResponseBodyAsString());
@@ -262,16 +373,13 @@ public class NetconfUtil {
 			NotificationUtil.sendEvent("CmaasConfigDataLoadFailure", getMgdObjs(prefix, root),
 					getAddInfo(e.getRawStatusCode(), e.getResponseBodyAsString()));
 
-		} catch (Exception e) {
-
-			configDataLoadFailureTotal.inc();
+		} else {
 			initL("Failed to load data for Yang file: " + yangFile + ", Prefix: " + prefix + ", Container: " + root
 					+ ", ConfigMap: " + cmapName);
 
-			LOG.error(e.getMessage(), e);
+			LOG.error(exp.getMessage(), exp);
 			NotificationUtil.sendEvent("CmaasConfigDataLoadFailure", getMgdObjs(prefix, root));
 		}
-		return response;
 	}
 
 	private static String getHdr(ConfigDatatype datatype) {
@@ -303,57 +411,40 @@ public class NetconfUtil {
 		return addInfo;
 	}
 
-	private static final String cmaasSession = "cmaas_rpc";
+	/**
+	 * Payloads go into a single edit-config, which running applies all or nothing.
+	 * If the server rejects it, each payload is pushed on its own so only the
+	 * faulty ones fail.
+	 */
+	public void push(List<String> data) {
+		if (data.isEmpty())
+			return;
 
-	public void push(String data) {
-		Device device = null;
-		DeviceUser deviceUser = null;
-		String topXml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
-				+ "<rpc xmlns=\"urn:ietf:params:xml:ns:netconf:base:1.0\" message-id=\"1\">" + "<edit-config>"
-				+ "<target>" + "<running/>" + "</target>" + "<config>";
-		String endXml = " </config>" + "</edit-config>" + "</rpc>";
-
-		deviceUser = new DeviceUser("admin", "admin", "admin");
 		try {
-			device = new Device("cmaas", deviceUser, netconfHost, 2022);
-			device.setDefaultReadTimeout(DEFAULT_JNC_READ_TIMEOUT);
-			device.connect("admin");
-			device.newSession(cmaasSession);
-
-			String rpc = topXml + data + endXml;
-			rpc = rpc.replaceAll("\\s*xmlns\\s*=\"\"", Constants.EMPTY_STRING);
-			LOG.info("RPC-REQ : " + rpc);
-			String reply = device.getSession(cmaasSession).rpc(rpc).toXMLString();
-			LOG.info("RPC-RESP : " + reply);
+			editConfig(data);
 		} catch (IOException e) {
 			LOG.error(e.getMessage(), e);
 		} catch (JNCException e) {
-			LOG.error(e.getMessage(), e);
-		} finally {
-			if (device != null) {
-				closeDevice(netconfHost, device);
+			if (data.size() > 1 && e.getErrorCode() == JNCException.RPC_REPLY_ERROR) {
+				LOG.warn("Edit-config of " + data.size() + " payloads rejected, pushing them one by one: "
+						+ e.getMessage());
+				data.forEach(payload -> push(Collections.singletonList(payload)));
+			} else {
+				LOG.error(e.getMessage(), e);
 			}
 		}
 	}
 
-	public static void closeDevice(String ip, Device device) {
-		try {
-			if (device != null) {
-				LOG.info("Closing the device: " + ip);
-				Thread thread = new Thread(() -> {
-					try {
-						if (device.getSession(cmaasSession) != null) {
-							device.closeSession(cmaasSession);
-						}
-						device.close();
-					} catch (Exception e) {
-						LOG.error("Error while closing the device : " + ip);
-					}
-				});
-				thread.start();
-			}
-		} catch (Exception e) {
-			LOG.error(e.getMessage(), "Error occured while deleting the device");
-		}
+	private void editConfig(List<String> data) throws IOException, JNCException {
+		String topXml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<rpc xmlns=\"urn:ietf:params:xml:ns:netconf:base:1.0\" message-id=\"" + messageId.incrementAndGet()
+				+ "\">" + "<edit-config>" + "<target>" + "<running/>" + "</target>" + "<config>";
+		String endXml = " </config>" + "</edit-config>" + "</rpc>";
+
+		String rpc = topXml + String.join(Constants.EMPTY_STRING, data) + endXml;
+		rpc = rpc.replaceAll("\\s*xmlns\\s*=\"\"", Constants.EMPTY_STRING);
+		LOG.info("RPC-REQ : " + rpc);
+		String reply = rpcSession.rpc(rpc);
+		LOG.info("RPC-RESP : " + reply);
 	}
 }
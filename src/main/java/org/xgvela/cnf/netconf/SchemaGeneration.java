@@ -0,0 +1,94 @@
+// Copyright 2020 Mavenir
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.xgvela.cnf.netconf;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.stereotype.Component;
+
+import org.xgvela.cnf.util.MetricsUtil;
+
+import io.prometheus.client.Histogram;
+
+/**
+ * Schema generation of netconf. Every schema load bumps the generation, which
+ * caches can key off. Readers that must not run during a load wait in
+ * {@link #awaitLoaded(long)} and are released as soon as it finishes.
+ */
+@Component
+public class SchemaGeneration {
+
+	private static final Logger LOG = LogManager.getLogger(SchemaGeneration.class);
+
+	private static final Histogram waitDuration = MetricsUtil.addHistogram("cmaas_schema_load_wait_seconds",
+			"Time readers spent waiting for an ongoing schema load", 0.001, 0.01, 0.05, 0.1, 0.25, 0.5, 1, 5, 10, 30,
+			60);
+
+	private long generation = 1;
+	private boolean loading = false;
+
+	public synchronized long get() {
+		return generation;
+	}
+
+	// generation an ongoing load ends in, the current one if none is ongoing
+	public synchronized long loadingGeneration() {
+		return loading ? generation + 1 : generation;
+	}
+
+	// schema load started
+	public synchronized void begin() {
+		loading = true;
+	}
+
+	// schema load finished (successfully or not), wakes up waiting readers
+	public synchronized void end() {
+		generation++;
+		loading = false;
+		LOG.debug("Schema generation: " + generation);
+		notifyAll();
+	}
+
+	/**
+	 * Waits while a schema load is ongoing.
+	 *
+	 * @param timeoutMs maximum wait, 0 to wait indefinitely
+	 * @return false if the wait timed out or was interrupted
+	 */
+	public synchronized boolean awaitLoaded(long timeoutMs) {
+		if (!loading)
+			return true;
+
+		LOG.info("Waiting for schema load to finish...");
+		Histogram.Timer timer = waitDuration.startTimer();
+		long deadline = System.currentTimeMillis() + timeoutMs;
+		try {
+			while (loading) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (timeoutMs > 0 && remaining <= 0)
+					return false;
+
+				wait(timeoutMs > 0 ? remaining : 0);
+			}
+			return true;
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			timer.observeDuration();
+		}
+	}
+}
@@ -0,0 +1,341 @@
+// Copyright 2020 Mavenir
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.xgvela.cnf.netconf;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import org.xgvela.cnf.Constants;
+import org.xgvela.cnf.util.MetricsUtil;
+import org.xgvela.cnf.util.Utils;
+import org.xgvela.model.ConfModelMetadata;
+import com.tailf.conf.ConfException;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+
+/**
+ * Coalesces schema load requests into a single netconf schema upgrade. Requests
+ * arriving within the batch window of each other share one upgrade. New fxs
+ * enter the fxs directory through {@link #publish(Path, String)} and leave it
+ * through {@link #remove(String)}, both wait while an upgrade runs. If the upgrade fails, the fxs not loaded yet are set
+ * aside (the loaded version, if any, is put back) and the configmaps of the
+ * batch are upgraded one at a time to find the ones with broken schemas; their
+ * new fxs are deleted and only they are reported as failed. Schemas already
+ * loaded are never removed.
+ */
+@Component
+public class SchemaLoader {
+
+	private static final Logger LOG = LogManager.getLogger(SchemaLoader.class);
+
+	private static final String STAGING_PATH = Constants.FXS_FILE_PATH + "staging/";
+	private static final String PREVIOUS_PATH = Constants.FXS_FILE_PATH + "previous/";
+
+	private static final Counter schemaUpgradesTotal = MetricsUtil.addCounter("cmaas_schema_upgrades_total",
+			"Number of netconf schema upgrades performed", new String[] { "result" });
+	private static final Histogram batchSize = MetricsUtil.addHistogram("cmaas_schema_load_batch_size",
+			"Number of configmaps whose schemas were loaded by one upgrade", 1, 2, 5, 10, 20, 50);
+
+	@Autowired
+	private NetconfUtil netconf;
+
+	@Autowired
+	private SchemaGeneration schemaGeneration;
+
+	@Value("${cmaas.schema.load.window-ms:500}")
+	private long windowMs;
+
+	@Value("${cmaas.schema.load.max-batch:50}")
+	private int maxBatch;
+
+	private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+
+	// modules whose fxs was published and not loaded by an upgrade yet
+	private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+	// publishing shares the fxs directory, an upgrade has it to itself
+	private final ReadWriteLock fxsLock = new ReentrantReadWriteLock();
+
+	@PostConstruct
+	public void init() {
+		Thread loader = new Thread(this::run, "schema-loader");
+		loader.setDaemon(true);
+		loader.start();
+	}
+
+	/**
+	 * Loads the schemas (fxs) of the configmaps, blocking until done.
+	 *
+	 * @return <configmap name: true if its schemas were loaded>
+	 */
+	public Map<String, Boolean> load(String cmapNamespace, String nfId, List<String> cmapNames) {
+		Map<String, CompletableFuture<Boolean>> futures = new LinkedHashMap<>();
+		cmapNames.forEach(cmapName -> {
+			Request request = new Request(cmapName, cmapNamespace, nfId);
+			futures.put(cmapName, request.result);
+			requests.add(request);
+		});
+
+		Map<String, Boolean> results = new LinkedHashMap<>();
+		futures.forEach((cmapName, future) -> {
+			try {
+				results.put(cmapName, future.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				results.put(cmapName, false);
+			} catch (ExecutionException e) {
+				LOG.error(e.getMessage(), e);
+				results.put(cmapName, false);
+			}
+		});
+		return results;
+	}
+
+	/**
+	 * Moves a compiled fxs into the fxs directory in one step, waiting while an
+	 * upgrade runs. The fxs it replaces is kept until the new one is loaded.
+	 *
+	 * @param fxs compiled fxs, on the same file system as the fxs directory
+	 * @return false if the fxs could not be moved
+	 */
+	public boolean publish(Path fxs, String moduleName) {
+		Path live = Paths.get(Constants.FXS_FILE_PATH + moduleName + Constants.FXS);
+		fxsLock.readLock().lock();
+		try {
+
+			// keep the loaded version, not one published after it
+			if (!pending.contains(moduleName) && Files.exists(live)) {
+				Files.createDirectories(Paths.get(PREVIOUS_PATH));
+				Files.copy(live, Paths.get(PREVIOUS_PATH + moduleName + Constants.FXS),
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+			Files.move(fxs, live, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			pending.add(moduleName);
+			return true;
+
+		} catch (IOException e) {
+			LOG.error("Unable to publish fxs: " + fxs + " to: " + live, e);
+			return false;
+		} finally {
+			fxsLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Deletes the fxs of a module once no upgrade runs, along with the version
+	 * kept for it. Takes effect with the next upgrade.
+	 */
+	public void remove(String moduleName) {
+		fxsLock.writeLock().lock();
+		try {
+			delete(Constants.FXS_FILE_PATH, moduleName);
+			delete(PREVIOUS_PATH, moduleName);
+			pending.remove(moduleName);
+		} finally {
+			fxsLock.writeLock().unlock();
+		}
+	}
+
+	private void run() {
+		while (true) {
+			try {
+				List<Request> batch = new ArrayList<>();
+				batch.add(requests.take());
+
+				// keep collecting while requests keep arriving within the window
+				Request next;
+				while (batch.size() < maxBatch && (next = requests.poll(windowMs, TimeUnit.MILLISECONDS)) != null)
+					batch.add(next);
+
+				loadBatch(batch);
+
+			} catch (InterruptedException e) {
+				LOG.error(e.getMessage(), e);
+				Thread.currentThread().interrupt();
+				return;
+			} catch (Exception e) {
+				LOG.error(e.getMessage(), e);
+			}
+		}
+	}
+
+	private void loadBatch(List<Request> batch) {
+		LOG.debug("Loading schemas for " + batch.size() + " ConfigMap(s): " + batch);
+		batchSize.observe(batch.size());
+
+		fxsLock.writeLock().lock();
+		schemaGeneration.begin();
+		try {
+			if (upgrade()) {
+				new ArrayList<>(pending).forEach(this::loaded);
+				batch.forEach(request -> request.result.complete(true));
+				return;
+			}
+
+			LOG.error("Schema load failed for batch, loading ConfigMaps one at a time: " + batch);
+			isolate(batch);
+
+		} finally {
+			schemaGeneration.end();
+			fxsLock.writeLock().unlock();
+			batch.forEach(request -> request.result.complete(false));
+		}
+	}
+
+	// set all new fxs aside, then bring them back one configmap at a time
+	private void isolate(List<Request> batch) {
+		List<String> fresh = new ArrayList<>(pending);
+		fresh.forEach(this::stage);
+
+		try {
+			for (Request request : batch) {
+				List<String> modules = getModuleNames(request).stream().filter(fresh::contains)
+						.collect(Collectors.toList());
+				modules.forEach(moduleName -> moveFxs(STAGING_PATH, Constants.FXS_FILE_PATH, moduleName));
+
+				if (upgrade()) {
+					modules.forEach(this::loaded);
+					request.result.complete(true);
+					continue;
+				}
+
+				LOG.error(
+						"Schema load failed, please check yangs: Deleting new schema files (.fxs) of yangs in ConfigMap: "
+								+ request.cmapName + ", Namespace: " + request.cmapNamespace);
+
+				// drop the new fxs, the loaded version (if any) stays
+				modules.forEach(moduleName -> {
+					LOG.debug("Deleting new schema for: " + moduleName);
+					stage(moduleName);
+					delete(STAGING_PATH, moduleName);
+					loaded(moduleName);
+				});
+				request.result.complete(false);
+			}
+		} finally {
+
+			// new fxs of configmaps loaded later, or left over if the loop was cut short
+			fresh.forEach(moduleName -> moveFxs(STAGING_PATH, Constants.FXS_FILE_PATH, moduleName));
+		}
+	}
+
+	// moves a new fxs to staging, putting back the loaded version
+	private void stage(String moduleName) {
+		moveFxs(Constants.FXS_FILE_PATH, STAGING_PATH, moduleName);
+
+		Path previous = Paths.get(PREVIOUS_PATH + moduleName + Constants.FXS);
+		if (Files.exists(previous)) {
+			try {
+				Files.copy(previous, Paths.get(Constants.FXS_FILE_PATH + moduleName + Constants.FXS),
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException e) {
+				LOG.error("Unable to restore loaded fxs: " + previous, e);
+			}
+		}
+	}
+
+	// fxs in the fxs directory is what netconf has loaded
+	private void loaded(String moduleName) {
+		pending.remove(moduleName);
+		delete(PREVIOUS_PATH, moduleName);
+	}
+
+	private boolean upgrade() {
+		try {
+			netconf.upgradeSchemas();
+			schemaUpgradesTotal.labels("success").inc();
+			return true;
+		} catch (ConfException | IOException e) {
+			LOG.error(e.getMessage(), e);
+		}
+		schemaUpgradesTotal.labels("failure").inc();
+		return false;
+	}
+
+	private static List<String> getModuleNames(Request request) {
+		List<String> moduleNames = new ArrayList<>();
+		Map<String, ConfModelMetadata> mapOfConfModels = Utils.confModelPerConfigmap
+				.get(request.cmapName + "/" + request.cmapNamespace);
+
+		if (mapOfConfModels != null)
+			mapOfConfModels.values().forEach(confModel -> moduleNames.add(confModel.getModuleName()));
+		return moduleNames;
+	}
+
+	private static void delete(String path, String moduleName) {
+		try {
+			Files.deleteIfExists(Paths.get(path + moduleName + Constants.FXS));
+		} catch (IOException e) {
+			LOG.error("Unable to delete fxs: " + path + moduleName + Constants.FXS, e);
+		}
+	}
+
+	private static void moveFxs(String fromPath, String toPath, String moduleName) {
+		Path from = Paths.get(fromPath + moduleName + Constants.FXS);
+		if (!Files.exists(from))
+			return;
+
+		try {
+			Files.createDirectories(Paths.get(toPath));
+			Files.move(from, Paths.get(toPath + moduleName + Constants.FXS), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			LOG.error("Unable to move fxs: " + from + " to: " + toPath, e);
+		}
+	}
+
+	private static class Request {
+		private final String cmapName;
+		private final String cmapNamespace;
+		private final String nfId;
+		private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+		private Request(String cmapName, String cmapNamespace, String nfId) {
+			this.cmapName = cmapName;
+			this.cmapNamespace = cmapNamespace;
+			this.nfId = nfId;
+		}
+
+		@Override
+		public String toString() {
+			return cmapName + "/" + cmapNamespace + " (" + nfId + ")";
+		}
+	}
+}
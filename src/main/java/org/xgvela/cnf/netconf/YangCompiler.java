@@ -0,0 +1,227 @@
+// Copyright 2020 Mavenir
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.xgvela.cnf.netconf;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import org.xgvela.cnf.Constants;
+import org.xgvela.cnf.util.MetricsUtil;
+import org.xgvela.cnf.util.Utils;
+
+import io.prometheus.client.Histogram;
+
+/**
+ * Bounded pool of netconfc processes. Modules of one batch are compiled
+ * concurrently, each one only after the modules it imports (directly or through
+ * its submodules) from the same batch; if one of those failed, the module is
+ * not compiled and fails naming the module that failed first. Modules found in the {@link FxsCache}
+ * are not compiled again. Compiled or restored fxs are written to a temporary
+ * file and published to the fxs directory by the {@link SchemaLoader}, so an
+ * upgrade never sees a partial one.
+ */
+@Component
+public class YangCompiler {
+
+	private static final Logger LOG = LogManager.getLogger(YangCompiler.class);
+
+	private static final String COMPILE_PATH = Constants.FXS_FILE_PATH + "compile/";
+
+	private static final Histogram compileDuration = MetricsUtil.addHistogram(
+			"cmaas_configmodel_compile_duration_seconds", "Time taken by netconfc to compile a single yang module",
+			0.25, 0.5, 1, 2, 5, 10, 20, 30, 60);
+
+	@Autowired
+	private NetconfUtil netconf;
+
+	@Autowired
+	private FxsCache fxsCache;
+
+	@Autowired
+	private SchemaLoader schemaLoader;
+
+	@Value("${cmaas.compile.workers:0}")
+	private int compileWorkers;
+
+	private ExecutorService pool;
+
+	@PostConstruct
+	public void init() {
+		int workers = compileWorkers > 0 ? compileWorkers : Runtime.getRuntime().availableProcessors();
+		AtomicInteger count = new AtomicInteger();
+		pool = Executors.newFixedThreadPool(workers, runnable -> {
+			Thread thread = new Thread(runnable, "yang-compile-" + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		LOG.info("Yang compile pool started with " + workers + " worker(s)");
+	}
+
+	/**
+	 * @param modules <yangKey: moduleName> of the modules to compile
+	 * @return <yangKey: true if compiled successfully>
+	 */
+	public Map<String, Boolean> compile(Map<String, String> modules) {
+
+		// <moduleName: yangKey>
+		Map<String, String> keyPerModule = new HashMap<>();
+		modules.forEach((yangKey, moduleName) -> keyPerModule.put(moduleName, yangKey));
+
+		// <yangKey: [yangKeys it depends on]>
+		Map<String, Set<String>> dependencies = new HashMap<>();
+		modules.forEach((yangKey, moduleName) -> {
+			Set<String> deps = new HashSet<>();
+			collectImports(moduleName, new HashSet<>()).stream().filter(keyPerModule::containsKey)
+					.map(keyPerModule::get).filter(dep -> !dep.equals(yangKey)).forEach(deps::add);
+			dependencies.put(yangKey, deps);
+			LOG.debug("Yang: " + yangKey + " depends on: " + deps);
+		});
+
+		Map<String, CompletableFuture<Boolean>> futures = new HashMap<>();
+		Map<String, String> failedBy = new ConcurrentHashMap<>();
+		modules.keySet()
+				.forEach(yangKey -> schedule(yangKey, modules, dependencies, futures, failedBy, new HashSet<>()));
+
+		Map<String, Boolean> results = new HashMap<>();
+		futures.forEach((yangKey, future) -> results.put(yangKey, future.join()));
+		return results;
+	}
+
+	private CompletableFuture<Boolean> schedule(String yangKey, Map<String, String> modules,
+			Map<String, Set<String>> dependencies, Map<String, CompletableFuture<Boolean>> futures,
+			Map<String, String> failedBy, Set<String> visiting) {
+
+		if (futures.containsKey(yangKey))
+			return futures.get(yangKey);
+
+		visiting.add(yangKey);
+		List<String> deps = new ArrayList<>();
+		List<CompletableFuture<Boolean>> before = new ArrayList<>();
+		for (String dep : dependencies.get(yangKey)) {
+			if (visiting.contains(dep)) {
+				LOG.warn("Cyclic import between yang: " + yangKey + " and " + dep + ", ignoring ordering");
+				continue;
+			}
+			deps.add(dep);
+			before.add(schedule(dep, modules, dependencies, futures, failedBy, visiting));
+		}
+		visiting.remove(yangKey);
+
+		CompletableFuture<Boolean> future = CompletableFuture.allOf(before.toArray(new CompletableFuture[0]))
+				.thenApplyAsync(ignored -> {
+					for (String dep : deps) {
+						String cause = failedBy.get(dep);
+						if (cause != null) {
+							LOG.error("Not compiling Yang: " + yangKey + ", it depends on Yang: " + dep
+									+ (cause.equals(dep) ? " which failed to compile"
+											: " which failed because of Yang: " + cause));
+							failedBy.put(yangKey, cause);
+							return false;
+						}
+					}
+
+					if (compileModule(yangKey, modules.get(yangKey)))
+						return true;
+
+					failedBy.put(yangKey, yangKey);
+					return false;
+				}, pool);
+		futures.put(yangKey, future);
+		return future;
+	}
+
+	private boolean compileModule(String yangKey, String moduleName) {
+		String yangFile = Constants.YANG_FILE_PATH + moduleName + Constants.YANG;
+
+		Path fxs;
+		try {
+			Files.createDirectories(Paths.get(COMPILE_PATH));
+			fxs = Files.createTempFile(Paths.get(COMPILE_PATH), moduleName + "-", Constants.FXS);
+		} catch (IOException e) {
+			LOG.error("Unable to create fxs for Yang: " + yangKey, e);
+			return false;
+		}
+
+		try {
+
+			// identical module text compiled before, reuse its fxs
+			String cacheKey = fxsCache.getKey(moduleName);
+			if (fxsCache.restore(cacheKey, fxs.toString())) {
+				LOG.debug("Reusing cached fxs for Yang: " + yangKey);
+				return schemaLoader.publish(fxs, moduleName);
+			}
+
+			LOG.debug("Compiling Yang: " + yangKey);
+			Histogram.Timer timer = compileDuration.startTimer();
+			try {
+				if (!netconf.compileYang(yangFile, fxs.toString()))
+					return false;
+			} finally {
+				timer.observeDuration();
+			}
+
+			fxsCache.store(cacheKey, fxs.toString());
+			return schemaLoader.publish(fxs, moduleName);
+
+		} catch (Exception e) {
+			LOG.error(e.getMessage(), e);
+			return false;
+		} finally {
+
+			// left over unless published
+			try {
+				Files.deleteIfExists(fxs);
+			} catch (IOException e) {
+				LOG.error("Unable to delete fxs: " + fxs, e);
+			}
+		}
+	}
+
+	// imports of a module, including those of the submodules it includes
+	private Set<String> collectImports(String moduleName, Set<String> visited) {
+		Set<String> imports = new HashSet<>();
+		if (!visited.add(moduleName))
+			return imports;
+
+		String yangModel = Utils.readYang(moduleName);
+		if (yangModel == null)
+			return imports;
+
+		imports.addAll(Utils.getYangImports(yangModel));
+		Utils.getYangIncludes(yangModel).forEach(submodule -> imports.addAll(collectImports(submodule, visited)));
+		return imports;
+	}
+}
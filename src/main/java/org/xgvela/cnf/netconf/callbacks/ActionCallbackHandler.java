@@ -21,6 +21,7 @@ import java.util.List;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -33,6 +34,7 @@ import org.springframework.web.client.RestTemplate;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.xgvela.cnf.ConfigServiceApplication;
 import org.xgvela.cnf.netconf.models.ExecResponse;
 import org.xgvela.cnf.netconf.models.GetRecordRequest;
 import org.xgvela.cnf.netconf.models.GetRecordResponse;
@@ -56,6 +58,8 @@ import com.tailf.dp.DpCallbackException;
 import com.tailf.dp.annotations.ActionCallback;
 import com.tailf.dp.proto.ActionCBType;
 
+import io.prometheus.client.Histogram;
+
 @Component
 public class ActionCallbackHandler {
 
@@ -70,14 +74,28 @@ public class ActionCallbackHandler {
 	private static final String operation_records_api = "/api/v1/tmaas/operations/record";
 
 	@Autowired
+	@Qualifier(ConfigServiceApplication.ACTION_REST)
 	private RestTemplate restTemplate;
 
 	@Autowired
 	private CallbackUtil cbUtil;
 
+	@Autowired
+	private OperationRecordCache recordCache;
+
 	@ActionCallback(callPoint = RECORD_GET, callType = ActionCBType.ACTION)
 	public ConfXMLParam[] doActionRecordGet(final DpActionTrans trans, final ConfTag name, final ConfObject[] keyPath,
 			final ConfXMLParam[] params) throws DpCallbackException {
+		Histogram.Timer timer = CallbackUtil.startCallback("action_record_get");
+		try {
+			return recordGet(trans, name, keyPath, params);
+		} finally {
+			CallbackUtil.endCallback("action_record_get", timer);
+		}
+	}
+
+	private ConfXMLParam[] recordGet(final DpActionTrans trans, final ConfTag name, final ConfObject[] keyPath,
+			final ConfXMLParam[] params) throws DpCallbackException {
 
 		LOG.info("=======> doActionRecordGet name=" + name.toString());
 		cbUtil.logKp(keyPath);
@@ -87,6 +105,22 @@ public class ActionCallbackHandler {
 		LOG.info("TransactionId: " + txnId + ", NfId: " + nfId);
 
 		ConfXMLParam[] retVal = null;
+		try {
+			retVal = prepareResponse(recordCache.get(nfId, txnId, () -> fetchRecord(nfId, txnId)));
+
+		} catch (DpCallbackException e) {
+			throw e;
+		} catch (ConfException | RuntimeException e) {
+
+			// throw error
+			LOG.error(e.getMessage(), e);
+			throw new DpCallbackException("Exception: " + e.getMessage());
+		}
+		LOG.info("<======= doActionRecordGet retVal=" + (retVal == null ? null : Arrays.toString(retVal)));
+		return retVal;
+	}
+
+	private OperationRecord fetchRecord(String nfId, String txnId) throws DpCallbackException {
 		GetRecordRequest recordRequest = new GetRecordRequest(txnId, nfId, null);
 
 		try {
@@ -106,7 +140,7 @@ public class ActionCallbackHandler {
 						.postForEntity(cbUtil.getTopoFqdn() + operation_records_api, entity, String.class);
 
 				LOG.info("Request succeeded with response: " + response.getBody());
-				retVal = prepareResponse(MAPPER.readValue(response.getBody(), GetRecordResponse.class).getRecord());
+				return MAPPER.readValue(response.getBody(), GetRecordResponse.class).getRecord();
 
 			} catch (HttpClientErrorException | HttpServerErrorException e) {
 
@@ -133,8 +167,6 @@ public class ActionCallbackHandler {
 			LOG.error(e.getMessage(), e);
 			throw new DpCallbackException("Unable to deserialize request/response to Bean");
 		}
-		LOG.info("<======= doActionRecordGet retVal=" + (retVal == null ? null : Arrays.toString(retVal)));
-		return retVal;
 	}
 
 	private ConfXMLParam[] prepareResponse(OperationRecord record) throws ConfException {
@@ -196,6 +228,16 @@ public class ActionCallbackHandler {
 	@ActionCallback(callPoint = EXEC, callType = ActionCBType.ACTION)
 	public ConfXMLParam[] doActionExec(final DpActionTrans trans, final ConfTag name, final ConfObject[] keyPath,
 			final ConfXMLParam[] params) throws DpCallbackException {
+		Histogram.Timer timer = CallbackUtil.startCallback("action_exec");
+		try {
+			return exec(trans, name, keyPath, params);
+		} finally {
+			CallbackUtil.endCallback("action_exec", timer);
+		}
+	}
+
+	private ConfXMLParam[] exec(final DpActionTrans trans, final ConfTag name, final ConfObject[] keyPath,
+			final ConfXMLParam[] params) throws DpCallbackException {
 
 		LOG.info("=======> doActionExec name=" + name.toString());
 		cbUtil.logKp(keyPath);
@@ -22,14 +22,24 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import org.xgvela.cnf.k8s.K8sUtil;
+import org.xgvela.cnf.util.MetricsUtil;
 import com.tailf.conf.ConfObject;
 import com.tailf.dp.DpTrans;
 
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+
 @Component
 public class CallbackUtil {
 
 	private static final Logger LOG = LogManager.getLogger(CallbackUtil.class);
 
+	private static final Gauge callbacksInFlight = MetricsUtil.addGauge("cmaas_dp_callbacks_in_flight",
+			"Number of data provider callbacks being served", new String[] { "type" });
+	private static final Histogram callbackDuration = MetricsUtil.addHistogram("cmaas_dp_callback_duration_seconds",
+			"Time taken to serve a data provider callback", new String[] { "type" }, 0.001, 0.005, 0.01, 0.05, 0.1,
+			0.25, 0.5, 1, 2, 5, 10, 30);
+
 	@Autowired
 	private K8sUtil k8sUtil;
 
@@ -59,6 +69,17 @@ public class CallbackUtil {
 		 */
 	}
 
+	// start of a callback, to be paired with endCallback()
+	public static Histogram.Timer startCallback(String type) {
+		callbacksInFlight.labels(type).inc();
+		return callbackDuration.labels(type).startTimer();
+	}
+
+	public static void endCallback(String type, Histogram.Timer timer) {
+		timer.observeDuration();
+		callbacksInFlight.labels(type).dec();
+	}
+
 	public String encodeBase64(String spec) {
 		return Base64.getEncoder().encodeToString(spec.getBytes());
 	}
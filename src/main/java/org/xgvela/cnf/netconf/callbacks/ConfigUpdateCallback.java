@@ -15,17 +15,20 @@
 package org.xgvela.cnf.netconf.callbacks;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import org.xgvela.cnf.Constants;
 import org.xgvela.cnf.netconf.models.CallbackModel;
+import org.xgvela.cnf.netconf.models.ConfigChange;
+import org.xgvela.cnf.netconf.models.ConfigChange.Operation;
 import org.xgvela.cnf.notification.KeyValueBean;
 import org.xgvela.cnf.notification.NotificationUtil;
 import org.xgvela.cnf.util.ConfigUtil;
@@ -55,57 +58,68 @@ public class ConfigUpdateCallback {
 	private static final Counter configDataUpdateAttempts = MetricsUtil
 			.addCounter("cmaas_configdata_update_attempts_total", "No. of transactions completed in Netconf");
 
-	public static HashMap<Integer, CopyOnWriteArrayList<CallbackModel>> txToCbModels = new HashMap<>();
+	// <transaction: <yang namespace: model>>, transactions are served on concurrent dp workers
+	private static final Map<Integer, Map<String, CallbackModel>> txToCbModels = new ConcurrentHashMap<>();
 
 	@Autowired
 	ConfigUtil configUtil;
 
+	@Autowired
+	TopologyCache topologyCache;
+
+	// changes kept per namespace for incremental updates, beyond that the full config is read
+	@Value("${cmaas.config.update.max-changes:10000}")
+	private int maxChanges;
+
 	@DataCallback(callPoint = CONFIG_UPDATE, callType = { DataCBType.SET_ELEM })
 	public int setElemDynamic(DpTrans trans, ConfObject[] kp, ConfValue newval) {
 
 //		LOG.debug("End Indicator CB: SET_ELEM (predefined)");
-		return commonHelper(trans, kp, false);
+		return commonHelper(trans, kp, new ConfigChange(Operation.SET, kp, newval), false);
 	}
 
 	@DataCallback(callPoint = CONFIG_UPDATE, callType = { DataCBType.CREATE })
 	public int createDynamic(DpTrans trans, ConfObject[] kp) {
 
 //		LOG.debug("End Indicator CB: CREATE (predefined)");
-		return commonHelper(trans, kp, false);
+		return commonHelper(trans, kp, new ConfigChange(Operation.CREATE, kp, null), false);
 	}
 
 	@DataCallback(callPoint = CONFIG_UPDATE, callType = { DataCBType.REMOVE })
 	public int deleteDynamic(DpTrans trans, ConfObject[] kp) {
 
 //		LOG.debug("End Indicator CB: REMOVE (predefined)");
-		return commonHelper(trans, kp, false);
+		return commonHelper(trans, kp, new ConfigChange(Operation.REMOVE, kp, null), false);
 	}
 
 	@DataCallback(callPoint = RESTART_CONFIG_UPDATE, callType = { DataCBType.SET_ELEM })
 	public int setElemRestart(DpTrans trans, ConfObject[] kp, ConfValue newval) {
 
 //		LOG.debug("End Indicator CB: SET_ELEM (restart)");
-		return commonHelper(trans, kp, true);
+		return commonHelper(trans, kp, new ConfigChange(Operation.SET, kp, newval), true);
 	}
 
 	@DataCallback(callPoint = RESTART_CONFIG_UPDATE, callType = { DataCBType.CREATE })
 	public int createRestart(DpTrans trans, ConfObject[] kp) {
 
 //		LOG.debug("End Indicator CB: CREATE (restart)");
-		return commonHelper(trans, kp, true);
+		return commonHelper(trans, kp, new ConfigChange(Operation.CREATE, kp, null), true);
 	}
 
 	@DataCallback(callPoint = RESTART_CONFIG_UPDATE, callType = { DataCBType.REMOVE })
 	public int deleteRestart(DpTrans trans, ConfObject[] kp) {
 
 //		LOG.debug("End Indicator CB: REMOVE (restart)");
-		return commonHelper(trans, kp, true);
+		return commonHelper(trans, kp, new ConfigChange(Operation.REMOVE, kp, null), true);
 	}
 
 	@TransCallback(callType = { TransCBType.FINISH })
 	public void finish(DpTrans trans) throws DpCallbackException {
+		long committedAt = System.nanoTime();
 		LOG.debug("End Indicator CB: FINISH");
 		logTransDetails(trans);
+		topologyCache.release(trans.getTransaction());
+		Map<String, CallbackModel> models = txToCbModels.remove(trans.getTransaction());
 
 		DpUserInfo dpUserInfo = trans.getUserInfo();
 		LOG.info(Constants.ACTIVITY + Constants.UPDATE + "User Name: " + dpUserInfo.getUserName() + ", IP: "
@@ -116,21 +130,31 @@ public class ConfigUpdateCallback {
 			return;
 		}
 
-		CopyOnWriteArrayList<CallbackModel> cbModels = txToCbModels.get(trans.getTransaction());
-		if (cbModels != null) {
+		if (models != null) {
+			List<CallbackModel> cbModels = new ArrayList<>(models.values());
 			try {
 				configDataUpdateAttempts.inc();
 				NotificationUtil.sendEvent("CmaasConfigUpdateReceived", getMgdObjs(cbModels));
 				LOG.info(Constants.ACTIVITY + Constants.UPDATE + "Config Update received.");
 
 				LOG.info("List of Callback Models for this transaction -\n" + cbModels.toString());
-				configUtil.resolveConfigType(cbModels);
+
+				// propagated by the per-NF update workers, keeps the data provider thread free
+				configUtil.resolveConfigType(cbModels, committedAt);
 
 			} catch (Exception e) {
 				LOG.error(e.getMessage(), e);
 			}
 		}
-		cleanup(trans.getTransaction());
+	}
+
+	@TransCallback(callType = { TransCBType.ABORT })
+	public void abort(DpTrans trans) throws DpCallbackException {
+		LOG.debug("End Indicator CB: ABORT");
+		logTransDetails(trans);
+
+		// nothing was committed, drop what the transaction collected
+		txToCbModels.remove(trans.getTransaction());
 	}
 
 	private ArrayList<KeyValueBean> getMgdObjs(List<CallbackModel> cbModels) {
@@ -140,12 +164,13 @@ public class ConfigUpdateCallback {
 		return mgdObjs;
 	}
 
-	private int commonHelper(DpTrans trans, ConfObject[] kp, boolean restartFlag) {
+	private int commonHelper(DpTrans trans, ConfObject[] kp, ConfigChange change, boolean restartFlag) {
 //		logTransDetails(trans);
 		ConfTag cTag = getConfTag(kp);
 //		logConfTagDetails(cTag);
 
-		transHelper(trans.getTransaction(), cTag.getConfNamespace().toString(), cTag.getPrefix(), restartFlag);
+		transHelper(trans.getTransaction(), cTag.getConfNamespace().toString(), cTag.getPrefix(), change,
+				restartFlag);
 		return Conf.REPLY_OK;
 	}
 
@@ -167,38 +192,23 @@ public class ConfigUpdateCallback {
 		return (ConfTag) kp[kp.length - 1];
 	}
 
-	private void transHelper(int transaction, String yangNs, String yangPrefix, boolean restartFlag) {
+	private void transHelper(int transaction, String yangNs, String yangPrefix, ConfigChange change,
+			boolean restartFlag) {
 //		LOG.debug("Transaction: " + transaction + ", Namespace: " + yangNs + ", Prefix: " + yangPrefix
 //				+ " RestartFlag: " + restartFlag);
 
-		CopyOnWriteArrayList<CallbackModel> cbList;
-
-		if (!txToCbModels.containsKey(transaction)) { // transaction is ongoing
-			cbList = new CopyOnWriteArrayList<>();
+		// one model per namespace, restart once any change in it asks for restart
+		txToCbModels.computeIfAbsent(transaction, tx -> new ConcurrentHashMap<>()).compute(yangNs,
+				(ns, cbModel) -> {
+					if (cbModel == null)
+						cbModel = new CallbackModel(yangNs, yangPrefix, restartFlag);
+					else if (restartFlag)
+						cbModel.setRestart(true);
 
-		} else {
-			CallbackModel tempCbModel = null;
-			cbList = txToCbModels.get(transaction);
-
-			for (CallbackModel cbModel : cbList) {
-				if (cbModel.getYangNamespace().equals(yangNs)) { // if namespace is already present
-					if (cbModel.isRestart()) {
-						restartFlag = true;
-					}
-					tempCbModel = cbModel; // store and remove existing model
-					break;
-				}
-			}
-			if (tempCbModel != null)
-				cbList.remove(tempCbModel);
-		}
-		cbList.add(new CallbackModel(yangNs, yangPrefix, restartFlag));
-		txToCbModels.put(transaction, cbList);
+					cbModel.addChange(change, maxChanges);
+					return cbModel;
+				});
 
 //		LOG.debug("Internal map (models/transaction): " + txToCbModels);
 	}
-
-	private void cleanup(int trans) {
-		txToCbModels.remove(trans);
-	}
 }
@@ -0,0 +1,171 @@
+// Copyright 2020 Mavenir
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.xgvela.cnf.netconf.callbacks;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import org.xgvela.cnf.enums.OperationState;
+import org.xgvela.cnf.enums.OperationStatus;
+import org.xgvela.cnf.tmaas.model.OperationRecord;
+import org.xgvela.cnf.util.MetricsUtil;
+import com.tailf.dp.DpCallbackException;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+
+/**
+ * Short-lived cache of TMaaS operation records keyed by (nfId, transactionId).
+ * Records of finished operations are kept longer than running ones, and
+ * concurrent requests for the same record share one upstream call.
+ */
+@Component
+public class OperationRecordCache {
+
+	private static final Logger LOG = LogManager.getLogger(OperationRecordCache.class);
+
+	private static final Counter requestsTotal = MetricsUtil.addCounter("cmaas_action_record_cache_requests_total",
+			"Operation record requests by cache result", new String[] { "result" });
+	private static final Gauge hitRatio = MetricsUtil.addGauge("cmaas_action_record_cache_hit_ratio",
+			"Share of operation record requests served without an own upstream call");
+	private static final Histogram fetchDuration = MetricsUtil.addHistogram(
+			"cmaas_action_record_fetch_duration_seconds", "Time taken to fetch an operation record from TMaaS", 0.01,
+			0.05, 0.1, 0.25, 0.5, 1, 2, 5, 10);
+
+	@FunctionalInterface
+	public interface RecordFetcher {
+		OperationRecord fetch() throws DpCallbackException;
+	}
+
+	@Value("${cmaas.action.record-cache.ttl-ms:2000}")
+	private long ttlMs;
+
+	@Value("${cmaas.action.record-cache.terminal-ttl-ms:300000}")
+	private long terminalTtlMs;
+
+	@Value("${cmaas.action.record-cache.max-entries:1000}")
+	private int maxEntries;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final Map<String, CompletableFuture<OperationRecord>> inFlight = new ConcurrentHashMap<>();
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong served = new AtomicLong();
+
+	@PostConstruct
+	public void init() {
+		hitRatio.setChild(new Gauge.Child() {
+			@Override
+			public double get() {
+				long total = requests.get();
+				return total == 0 ? 0 : (double) served.get() / total;
+			}
+		});
+	}
+
+	/**
+	 * @return cached record, or the one fetched by this or a concurrent call
+	 */
+	public OperationRecord get(String nfId, String txnId, RecordFetcher fetcher) throws DpCallbackException {
+		String key = nfId + "/" + txnId;
+		requests.incrementAndGet();
+
+		Entry entry = entries.get(key);
+		if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+			record("hit");
+			return entry.record;
+		}
+
+		CompletableFuture<OperationRecord> fetch = new CompletableFuture<>();
+		CompletableFuture<OperationRecord> pending = inFlight.putIfAbsent(key, fetch);
+		if (pending != null) {
+			record("shared");
+			return await(pending);
+		}
+
+		requestsTotal.labels("miss").inc();
+		Histogram.Timer timer = fetchDuration.startTimer();
+		try {
+			OperationRecord record = fetcher.fetch();
+			put(key, record);
+			fetch.complete(record);
+			return record;
+
+		} catch (DpCallbackException | RuntimeException e) {
+			fetch.completeExceptionally(e);
+			throw e;
+		} finally {
+			timer.observeDuration();
+			inFlight.remove(key);
+		}
+	}
+
+	private void record(String result) {
+		requestsTotal.labels(result).inc();
+		served.incrementAndGet();
+	}
+
+	private void put(String key, OperationRecord record) {
+		long now = System.currentTimeMillis();
+		if (entries.size() >= maxEntries)
+			entries.values().removeIf(entry -> entry.expiresAt <= now);
+
+		if (record != null && entries.size() < maxEntries)
+			entries.put(key, new Entry(record, now + (isTerminal(record) ? terminalTtlMs : ttlMs)));
+	}
+
+	private static OperationRecord await(CompletableFuture<OperationRecord> pending) throws DpCallbackException {
+		try {
+			return pending.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DpCallbackException("Interrupted waiting for operation record");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof DpCallbackException)
+				throw (DpCallbackException) e.getCause();
+
+			LOG.error(e.getMessage(), e);
+			throw new DpCallbackException("Exception: " + e.getCause().getMessage());
+		}
+	}
+
+	// finished operations no longer change
+	private static boolean isTerminal(OperationRecord record) {
+		return record.getOperationState() == OperationState.COMPLETED
+				|| record.getOperationStatus() == OperationStatus.FAILED
+				|| record.getOperationStatus() == OperationStatus.CANCELLED;
+	}
+
+	private static class Entry {
+		private final OperationRecord record;
+		private final long expiresAt;
+
+		private Entry(OperationRecord record, long expiresAt) {
+			this.record = record;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
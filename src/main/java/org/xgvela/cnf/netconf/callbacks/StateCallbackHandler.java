@@ -14,6 +14,7 @@
 
 package org.xgvela.cnf.netconf.callbacks;
 
+import java.io.UncheckedIOException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -23,18 +24,11 @@ import java.util.Map;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.HttpServerErrorException;
-import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.xgvela.cnf.Constants;
 import org.xgvela.cnf.enums.State;
 import org.xgvela.cnf.tmaas.model.ExtendedAttr;
 import org.xgvela.cnf.tmaas.model.ManagedElement;
@@ -62,23 +56,36 @@ import com.tailf.dp.DpTrans;
 import com.tailf.dp.annotations.DataCallback;
 import com.tailf.dp.proto.DataCBType;
 
+import io.prometheus.client.Histogram;
+
 @Component
 public class StateCallbackHandler {
 
 	private static final Logger LOG = LogManager.getLogger(StateCallbackHandler.class);
 	private static final String STATE_CP = "tmaascp";
 
+	private static final String ME_PREFIX = "meXgvela";
+	private static final String NF_PREFIX = "nfXgvela";
+
 	private static final ObjectMapper MAPPER = new ObjectMapper();
-	private static ManagedElement managedElement;
 
 	@Autowired
-	private RestTemplate restTemplate;
+	private TopologyCache topologyCache;
 
 	@Autowired
 	private CallbackUtil cbUtil;
 
 	@DataCallback(callPoint = STATE_CP, callType = { DataCBType.ITERATOR })
 	public Iterator<Object> iterator(DpTrans trans, ConfObject[] kp) throws DpCallbackException {
+		Histogram.Timer timer = CallbackUtil.startCallback("iterator");
+		try {
+			return iterate(trans, kp);
+		} finally {
+			CallbackUtil.endCallback("iterator", timer);
+		}
+	}
+
+	private Iterator<Object> iterate(DpTrans trans, ConfObject[] kp) throws DpCallbackException {
 
 		LOG.debug("######################## ITERATOR");
 		cbUtil.logKp(kp);
@@ -89,12 +96,10 @@ public class StateCallbackHandler {
 		ConfTag confTag = (ConfTag) kp[0];
 		LOG.debug("Tag: " + confTag.getTag());
 
-		if (managedElement == null) {
-			getManagedElement();
-		}
+		TopologyIndex topology = topologyCache.get(trans);
+		ManagedElement managedElement = topology.getManagedElement();
 
 		if (confTag.getTag().equalsIgnoreCase("ManagedElement")) {
-			getManagedElement();
 			if (managedElement != null) {
 				list.add(managedElement);
 				LOG.debug("Added ME to list");
@@ -109,8 +114,7 @@ public class StateCallbackHandler {
 			String nfId = ((ConfKey) kp[1]).elementAt(0).toString();
 			LOG.debug("NF Id: " + nfId);
 
-			NetworkFunction nf = managedElement.getElemList().stream()
-					.filter(nfObj -> nfObj.getId().equalsIgnoreCase(nfId)).findAny().orElse(null);
+			NetworkFunction nf = topology.getNf(nfId);
 			if (nf != null) {
 				list.addAll(nf.getElemList());
 				LOG.debug("Added NFSvcs to list");
@@ -124,11 +128,9 @@ public class StateCallbackHandler {
 			String nfSvcId = ((ConfKey) kp[1]).elementAt(0).toString();
 			LOG.debug("NF Service Id: " + nfSvcId);
 
-			NetworkFunction nf = managedElement.getElemList().stream()
-					.filter(nfObj -> nfObj.getId().equalsIgnoreCase(nfId)).findAny().orElse(null);
+			NetworkFunction nf = topology.getNf(nfId);
 			if (nf != null) {
-				NFService nfSvc = nf.getElemList().stream()
-						.filter(nfSvcObj -> nfSvcObj.getId().equalsIgnoreCase(nfSvcId)).findAny().orElse(null);
+				NFService nfSvc = topology.getNfService(nfId, nfSvcId);
 
 				if (nfSvc != null) {
 					list.addAll(nfSvc.getElemList());
@@ -158,16 +160,13 @@ public class StateCallbackHandler {
 			String nfSvcInstanceId = ((ConfKey) kp[2]).elementAt(0).toString();
 			LOG.debug("NF Service instance Id: " + nfSvcInstanceId);
 
-			NetworkFunction nf = managedElement.getElemList().stream()
-					.filter(nfObj -> nfObj.getId().equalsIgnoreCase(nfId)).findAny().orElse(null);
+			NetworkFunction nf = topology.getNf(nfId);
 
 			if (nf != null) {
-				NFService nfSvc = nf.getElemList().stream()
-						.filter(nfSvcObj -> nfSvcObj.getId().equalsIgnoreCase(nfSvcId)).findAny().orElse(null);
+				NFService nfSvc = topology.getNfService(nfId, nfSvcId);
 
 				if (nfSvc != null) {
-					NFServiceInstance nfsi = nfSvc.getElemList().stream()
-							.filter(nfsins -> nfsins.getId().equals(nfSvcInstanceId)).findAny().orElse(null);
+					NFServiceInstance nfsi = topology.getNfServiceInstance(nfId, nfSvcId, nfSvcInstanceId);
 					list.addAll(nfsi.getNws());
 					LOG.debug("Added to list");
 				}
@@ -186,16 +185,13 @@ public class StateCallbackHandler {
 				String nfSvcInstanceId = ((ConfKey) kp[1]).elementAt(0).toString();
 				LOG.debug("NF Service instance Id: " + nfSvcInstanceId);
 
-				NetworkFunction nf = managedElement.getElemList().stream()
-						.filter(nfObj -> nfObj.getId().equalsIgnoreCase(nfId)).findAny().orElse(null);
+				NetworkFunction nf = topology.getNf(nfId);
 
 				if (nf != null) {
-					NFService nfSvc = nf.getElemList().stream()
-							.filter(nfSvcObj -> nfSvcObj.getId().equalsIgnoreCase(nfSvcId)).findAny().orElse(null);
+					NFService nfSvc = topology.getNfService(nfId, nfSvcId);
 
 					if (nfSvc != null) {
-						NFServiceInstance nfsi = nfSvc.getElemList().stream()
-								.filter(nfsins -> nfsins.getId().equals(nfSvcInstanceId)).findAny().orElse(null);
+						NFServiceInstance nfsi = topology.getNfServiceInstance(nfId, nfSvcId, nfSvcInstanceId);
 
 						list.addAll(getAttrs(nfsi.getExtendedAttrs()));
 						LOG.debug("Added NFSI extended attributes to list");
@@ -210,12 +206,10 @@ public class StateCallbackHandler {
 				String nfSvcId = ((ConfKey) kp[1]).elementAt(0).toString();
 				LOG.debug("NF Service Id: " + nfSvcId);
 
-				NetworkFunction nf = managedElement.getElemList().stream()
-						.filter(nfObj -> nfObj.getId().equalsIgnoreCase(nfId)).findAny().orElse(null);
+				NetworkFunction nf = topology.getNf(nfId);
 
 				if (nf != null) {
-					NFService nfSvc = nf.getElemList().stream()
-							.filter(nfSvcObj -> nfSvcObj.getId().equalsIgnoreCase(nfSvcId)).findAny().orElse(null);
+					NFService nfSvc = topology.getNfService(nfId, nfSvcId);
 
 					list.addAll(getAttrs(nfSvc.getExtendedAttrs()));
 					LOG.debug("Added NFS extended attributes to list");
@@ -227,8 +221,7 @@ public class StateCallbackHandler {
 				String nfId = ((ConfKey) kp[1]).elementAt(0).toString();
 				LOG.debug("NF Id: " + nfId);
 
-				NetworkFunction nf = managedElement.getElemList().stream()
-						.filter(nfObj -> nfObj.getId().equalsIgnoreCase(nfId)).findAny().orElse(null);
+				NetworkFunction nf = topology.getNf(nfId);
 
 				list.addAll(getAttrs(nf.getExtendedAttrs()));
 				LOG.debug("Added NF extended attributes to list");
@@ -251,6 +244,15 @@ public class StateCallbackHandler {
 
 	@DataCallback(callPoint = STATE_CP, callType = { DataCBType.GET_NEXT })
 	public ConfKey getKey(DpTrans trans, ConfObject[] kp, Object obj) {
+		Histogram.Timer timer = CallbackUtil.startCallback("get_next");
+		try {
+			return nextKey(trans, kp, obj);
+		} finally {
+			CallbackUtil.endCallback("get_next", timer);
+		}
+	}
+
+	private ConfKey nextKey(DpTrans trans, ConfObject[] kp, Object obj) {
 
 		ConfKey key = null;
 		try {
@@ -295,6 +297,22 @@ public class StateCallbackHandler {
 	@DataCallback(callPoint = STATE_CP, callType = DataCBType.GET_OBJECT)
 	public ConfObject[] getObject(DpTrans trans, ConfObject[] kp)
 			throws UnknownHostException, ConfException, JsonProcessingException {
+		Histogram.Timer timer = CallbackUtil.startCallback("get_object");
+		try {
+			return getValues(trans, kp);
+		} catch (UncheckedIOException e) {
+
+			// spec serialization failed while building a template
+			if (e.getCause() instanceof JsonProcessingException)
+				throw (JsonProcessingException) e.getCause();
+			throw e;
+		} finally {
+			CallbackUtil.endCallback("get_object", timer);
+		}
+	}
+
+	private ConfObject[] getValues(DpTrans trans, ConfObject[] kp)
+			throws UnknownHostException, ConfException, JsonProcessingException {
 
 		LOG.debug("######################## GET_OBJECT");
 		cbUtil.logKp(kp);
@@ -302,26 +320,14 @@ public class StateCallbackHandler {
 
 		ConfTag cTag = (ConfTag) kp[1];
 		ConfXMLParam[] retVal = null;
-		String prefix = "meXgvela";
 
-		if (managedElement == null) {
-			getManagedElement();
-		}
+		TopologyIndex topology = topologyCache.get(trans);
+		ManagedElement managedElement = topology.getManagedElement();
 
 		if (cTag.getTag().equalsIgnoreCase("ManagedElement")) {
 
 			LOG.debug("Getting Managed Element");
-			retVal = new ConfXMLParam[] { new ConfXMLParamStart(prefix, "attributes"),
-					new ConfXMLParamValue(prefix, "dnPrefix", new ConfBuf(managedElement.getDnPrefix())),
-					new ConfXMLParamValue(prefix, "userLabel", new ConfBuf(managedElement.getUserLabel())),
-					new ConfXMLParamValue(prefix, "locationName", new ConfBuf(managedElement.getLocationName())),
-					new ConfXMLParamValue(prefix, "managedElementTypeList", new ConfNoExists()),
-					new ConfXMLParamValue(prefix, "vendorName", new ConfBuf(managedElement.getVendorName())),
-					new ConfXMLParamValue(prefix, "userDefinedState",
-							new ConfBuf(managedElement.getUserDefinedState())),
-					new ConfXMLParamValue(prefix, "swVersion", new ConfBuf(managedElement.getSwVersion())),
-					new ConfXMLParamValue(prefix, "priorityLabel", new ConfNoExists()),
-					new ConfXMLParamStop(prefix, "attributes") };
+			retVal = topology.getCached("me", key -> meResponse(managedElement));
 
 		} else if (cTag.getTag().equalsIgnoreCase("NetworkFunction")) {
 
@@ -329,38 +335,12 @@ public class StateCallbackHandler {
 			String nfId = ((ConfKey) kp[0]).elementAt(0).toString();
 			LOG.debug("NF Id: " + nfId);
 
-			NetworkFunction nf = managedElement.getElemList().stream()
-					.filter(nfObj -> nfObj.getId().equalsIgnoreCase(nfId)).findAny().orElse(null);
+			NetworkFunction nf = topology.getNf(nfId);
 
 			if (nf != null) {
 
 				LOG.debug("Found NF: " + nf.getId());
-				int stateValue = getStateValue(nf.getState());
-
-				prefix = "nfXgvela";
-
-				JsonNode spec = nf.getOperation().getSpecification();
-				ConfObject openApi = new ConfNoExists();
-
-				// TODO: confirm this check
-				if (spec != null && spec.get("servers") != null && spec.get("servers").size() != 0) {
-					LOG.debug("Specification found for NF");
-					openApi = new ConfBuf(cbUtil.encodeBase64(MAPPER.writeValueAsString(spec)));
-				}
-
-				retVal = new ConfXMLParam[] { new ConfXMLParamStart(prefix, "attributes"),
-						new ConfXMLParamValue(prefix, "name", new ConfBuf(nf.getName())),
-						new ConfXMLParamValue(prefix, "userLabel", new ConfBuf(nf.getUserLabel())),
-						new ConfXMLParamValue(prefix, "swVersion", new ConfBuf(nf.getSwVersion())),
-						new ConfXMLParamValue(prefix, "nfType", new ConfBuf(nf.getNfType())),
-						new ConfXMLParamValue(prefix, "state", new ConfEnumeration(stateValue)),
-						new ConfXMLParamValue(prefix, "administrativeState", new ConfEnumeration(1)),
-						new ConfXMLParamValue(prefix, "operationalState", new ConfEnumeration(1)),
-						new ConfXMLParamValue(prefix, "usageState", new ConfEnumeration(1)),
-						new ConfXMLParamStop(prefix, "attributes"), new ConfXMLParamStart(prefix, "operations"),
-						new ConfXMLParamStart(prefix, "specification"),
-						new ConfXMLParamValue(prefix, "openapi", openApi),
-						new ConfXMLParamStop(prefix, "specification"), new ConfXMLParamStop(prefix, "operations"), };
+				retVal = topology.getCached("nf/" + nf.getId(), key -> nfResponse(nf));
 			}
 
 		} else if (cTag.getTag().equalsIgnoreCase("NFService")) {
@@ -369,79 +349,19 @@ public class StateCallbackHandler {
 			String nfId = ((ConfKey) kp[2]).elementAt(0).toString();
 			LOG.debug("NF Id: " + nfId);
 
-			NetworkFunction nf = managedElement.getElemList().stream()
-					.filter(nfObj -> nfObj.getId().equalsIgnoreCase(nfId)).findAny().orElse(null);
+			NetworkFunction nf = topology.getNf(nfId);
 
 			if (nf != null) {
 
 				String nfSvcId = ((ConfKey) kp[0]).elementAt(0).toString();
 				LOG.debug("NF Service Id: " + nfSvcId);
-				NFService nfService = nf.getElemList().stream()
-						.filter(nfServiceObj -> nfServiceObj.getId().equals(nfSvcId)).findAny().orElse(null);
+				NFService nfService = topology.getNfService(nfId, nfSvcId);
 
 				if (nfService != null) {
 
 					LOG.debug("Found NF Service: " + nfService.getId());
-					int stateValue = getStateValue(nfService.getState());
-					prefix = "nfXgvela";
-
-					JsonNode spec = nfService.getServiceOperation().getSpecification();
-					ConfObject openApi = new ConfNoExists();
-
-					// TODO: confirm this check
-					if (spec != null && spec.get("servers") != null && spec.get("servers").size() != 0) {
-						LOG.debug("Specification found for NFService");
-						openApi = new ConfBuf(cbUtil.encodeBase64(MAPPER.writeValueAsString(spec)));
-					}
-
-					if (nfService.isHaEnabled()) {
-
-						LOG.debug("HA is enabled");
-						retVal = new ConfXMLParam[] { new ConfXMLParamStart(prefix, "attributes"),
-								new ConfXMLParamValue(prefix, "name", new ConfBuf(nfService.getName())),
-								new ConfXMLParamValue(prefix, "userLabel", new ConfBuf(nfService.getUserLabel())),
-								new ConfXMLParamValue(prefix, "nfServiceType",
-										new ConfBuf(nfService.getNfServiceType())),
-								new ConfXMLParamValue(prefix, "swVersion", new ConfBuf(nfService.getSwVersion())),
-								new ConfXMLParamValue(prefix, "state", new ConfEnumeration(stateValue)),
-								new ConfXMLParamValue(prefix, "administrativeState", new ConfEnumeration(1)),
-								new ConfXMLParamValue(prefix, "operationalState", new ConfEnumeration(1)),
-								new ConfXMLParamValue(prefix, "usageState", new ConfEnumeration(1)),
-								new ConfXMLParamValue(prefix, "registrationState", new ConfNoExists()),
-								new ConfXMLParamStart(prefix, "ha"),
-								new ConfXMLParamValue(prefix, "monitoringMode",
-										new ConfEnumeration(getMonitoringMode(nfService.getMonitoringMode()))),
-								new ConfXMLParamValue(prefix, "mode",
-										new ConfEnumeration(getMode(nfService.getMode()))),
-								new ConfXMLParamValue(prefix, "numStandby", new ConfInt8(nfService.getNumStandby())),
-								new ConfXMLParamStop(prefix, "ha"), new ConfXMLParamStop(prefix, "attributes"),
-								new ConfXMLParamStart(prefix, "operations"),
-								new ConfXMLParamStart(prefix, "specification"),
-								new ConfXMLParamValue(prefix, "openapi", openApi),
-								new ConfXMLParamStop(prefix, "specification"),
-								new ConfXMLParamStop(prefix, "operations"), };
-
-					} else {
-
-						LOG.debug("HA is disabled");
-						retVal = new ConfXMLParam[] { new ConfXMLParamStart(prefix, "attributes"),
-								new ConfXMLParamValue(prefix, "name", new ConfBuf(nfService.getName())),
-								new ConfXMLParamValue(prefix, "userLabel", new ConfBuf(nfService.getUserLabel())),
-								new ConfXMLParamValue(prefix, "swVersion", new ConfBuf(nfService.getSwVersion())),
-								new ConfXMLParamValue(prefix, "nfServiceType",
-										new ConfBuf(nfService.getNfServiceType())),
-								new ConfXMLParamValue(prefix, "state", new ConfEnumeration(stateValue)),
-								new ConfXMLParamValue(prefix, "administrativeState", new ConfEnumeration(1)),
-								new ConfXMLParamValue(prefix, "operationalState", new ConfEnumeration(1)),
-								new ConfXMLParamValue(prefix, "usageState", new ConfEnumeration(1)),
-								new ConfXMLParamValue(prefix, "registrationState", new ConfNoExists()),
-								new ConfXMLParamValue(prefix, "ha", new ConfNoExists()),
-								new ConfXMLParamStop(prefix, "attributes"), new ConfXMLParamStart(prefix, "operations"),
-								new ConfXMLParamStart(prefix, "specification"),
-								new ConfXMLParamValue(prefix, "openapi", openApi),
-								new ConfXMLParamStop(prefix, "specification"),
-								new ConfXMLParamStop(prefix, "operations"), };
-					}
+					retVal = topology.getCached("nfs/" + nf.getId() + "/" + nfService.getId(),
+							key -> nfServiceResponse(nfService));
 				}
 			}
 		} else if (cTag.getTag().equalsIgnoreCase("NFServiceInstance")) {
@@ -450,38 +370,25 @@ public class StateCallbackHandler {
 			String nfId = ((ConfKey) kp[4]).elementAt(0).toString();
 			LOG.debug("NF Id: " + nfId);
 
-			NetworkFunction nf = managedElement.getElemList().stream()
-					.filter(nfObj -> nfObj.getId().equalsIgnoreCase(nfId)).findAny().orElse(null);
+			NetworkFunction nf = topology.getNf(nfId);
 
 			if (nf != null) {
 
 				String nfSvcId = ((ConfKey) kp[2]).elementAt(0).toString();
 				LOG.debug("Nf Service Id: " + nfSvcId);
-				NFService nfService = nf.getElemList().stream()
-						.filter(nfServiceObj -> nfServiceObj.getId().equals(nfSvcId)).findAny().orElse(null);
+				NFService nfService = topology.getNfService(nfId, nfSvcId);
 
 				if (nfService != null) {
 
 					String nfSvcInstanceId = ((ConfKey) kp[0]).elementAt(0).toString();
 					LOG.debug("NF Service Instance Id: " + nfSvcInstanceId);
-					NFServiceInstance nfSvcInstance = nfService.getElemList().stream()
-							.filter(nfSvcInstanceObj -> nfSvcInstanceObj.getId().equalsIgnoreCase(nfSvcInstanceId))
-							.findAny().orElse(null);
+					NFServiceInstance nfSvcInstance = topology.getNfServiceInstance(nfId, nfSvcId, nfSvcInstanceId);
 
 					if (nfSvcInstance != null) {
 
 						LOG.debug("NF Service Instance found: " + nfSvcInstanceId);
-						int stateValue = getStateValue(nfSvcInstance.getState());
-						prefix = "nfXgvela";
-
-						retVal = new ConfXMLParam[] { new ConfXMLParamStart(prefix, "attributes"),
-								new ConfXMLParamValue(prefix, "name", new ConfBuf(nfSvcInstance.getName())),
-								new ConfXMLParamValue(prefix, "userLabel", new ConfBuf(nfSvcInstance.getUserLabel())),
-								new ConfXMLParamValue(prefix, "state", new ConfEnumeration(stateValue)),
-								new ConfXMLParamValue(prefix, "haRole",
-										new ConfEnumeration(getHaRole(nfSvcInstance.getHaRole()))),
-								new ConfXMLParamValue(prefix, "msuid", new ConfBuf(nfSvcInstance.getMsUid())),
-								new ConfXMLParamStop(prefix, "attributes") };
+						retVal = topology.getCached("nfsi/" + nf.getId() + "/" + nfService.getId() + "/"
+								+ nfSvcInstance.getId(), key -> nfServiceInstanceResponse(nfSvcInstance));
 					}
 				}
 			}
@@ -491,29 +398,24 @@ public class StateCallbackHandler {
 			String nfId = ((ConfKey) kp[7]).elementAt(0).toString();
 			LOG.debug("NF Id: " + nfId);
 
-			NetworkFunction nf = managedElement.getElemList().stream()
-					.filter(nfObj -> nfObj.getId().equalsIgnoreCase(nfId)).findAny().orElse(null);
+			NetworkFunction nf = topology.getNf(nfId);
 
 			if (nf != null) {
 
 				String nfSvcId = ((ConfKey) kp[5]).elementAt(0).toString();
 				LOG.debug("Nf Service Id: " + nfSvcId);
-				NFService nfService = nf.getElemList().stream()
-						.filter(nfServiceObj -> nfServiceObj.getId().equals(nfSvcId)).findAny().orElse(null);
+				NFService nfService = topology.getNfService(nfId, nfSvcId);
 
 				if (nfService != null) {
 
 					String nfSvcInstanceId = ((ConfKey) kp[3]).elementAt(0).toString();
 					LOG.debug("NF Service Instance Id: " + nfSvcInstanceId);
-					NFServiceInstance nfSvcInstance = nfService.getElemList().stream()
-							.filter(nfSvcInstanceObj -> nfSvcInstanceObj.getId().equalsIgnoreCase(nfSvcInstanceId))
-							.findAny().orElse(null);
+					NFServiceInstance nfSvcInstance = topology.getNfServiceInstance(nfId, nfSvcId, nfSvcInstanceId);
 
 					if (nfSvcInstance != null) {
 
 						String name = ((ConfKey) kp[0]).elementAt(0).toString();
-						PodNetworksStatus podNws = nfSvcInstance.getNws().stream()
-								.filter(pns -> pns.getName().equals(name)).findAny().orElse(null);
+						PodNetworksStatus podNws = topology.getPodNetworks(nfId, nfSvcId, nfSvcInstanceId, name);
 
 						if (podNws != null) {
 							LOG.debug("PodNetworkStatus found: " + name);
@@ -541,23 +443,19 @@ public class StateCallbackHandler {
 				String nfId = ((ConfKey) kp[6]).elementAt(0).toString();
 				LOG.debug("NF Id: " + nfId);
 
-				NetworkFunction nf = managedElement.getElemList().stream()
-						.filter(nfObj -> nfObj.getId().equalsIgnoreCase(nfId)).findAny().orElse(null);
+				NetworkFunction nf = topology.getNf(nfId);
 
 				if (nf != null) {
 
 					String nfSvcId = ((ConfKey) kp[4]).elementAt(0).toString();
 					LOG.debug("Nf Service Id: " + nfSvcId);
-					NFService nfService = nf.getElemList().stream()
-							.filter(nfServiceObj -> nfServiceObj.getId().equals(nfSvcId)).findAny().orElse(null);
+					NFService nfService = topology.getNfService(nfId, nfSvcId);
 
 					if (nfService != null) {
 
 						String nfSvcInstanceId = ((ConfKey) kp[2]).elementAt(0).toString();
 						LOG.debug("NF Service Instance Id: " + nfSvcInstanceId);
-						NFServiceInstance nfSvcInstance = nfService.getElemList().stream()
-								.filter(nfSvcInstanceObj -> nfSvcInstanceObj.getId().equalsIgnoreCase(nfSvcInstanceId))
-								.findAny().orElse(null);
+						NFServiceInstance nfSvcInstance = topology.getNfServiceInstance(nfId, nfSvcId, nfSvcInstanceId);
 
 						if (nfSvcInstance != null) {
 							String name = ((ConfKey) kp[0]).elementAt(0).toString();
@@ -572,15 +470,13 @@ public class StateCallbackHandler {
 				String nfId = ((ConfKey) kp[4]).elementAt(0).toString();
 				LOG.debug("NF Id: " + nfId);
 
-				NetworkFunction nf = managedElement.getElemList().stream()
-						.filter(nfObj -> nfObj.getId().equalsIgnoreCase(nfId)).findAny().orElse(null);
+				NetworkFunction nf = topology.getNf(nfId);
 
 				if (nf != null) {
 
 					String nfSvcId = ((ConfKey) kp[2]).elementAt(0).toString();
 					LOG.debug("Nf Service Id: " + nfSvcId);
-					NFService nfService = nf.getElemList().stream()
-							.filter(nfServiceObj -> nfServiceObj.getId().equals(nfSvcId)).findAny().orElse(null);
+					NFService nfService = topology.getNfService(nfId, nfSvcId);
 
 					if (nfService != null) {
 						String name = ((ConfKey) kp[0]).elementAt(0).toString();
@@ -594,8 +490,7 @@ public class StateCallbackHandler {
 				String nfId = ((ConfKey) kp[2]).elementAt(0).toString();
 				LOG.debug("NF Id: " + nfId);
 
-				NetworkFunction nf = managedElement.getElemList().stream()
-						.filter(nfObj -> nfObj.getId().equalsIgnoreCase(nfId)).findAny().orElse(null);
+				NetworkFunction nf = topology.getNf(nfId);
 
 				if (nf != null) {
 					String name = ((ConfKey) kp[0]).elementAt(0).toString();
@@ -606,6 +501,110 @@ public class StateCallbackHandler {
 		return retVal;
 	}
 
+	// responses, built once per topology snapshot and shared by its readers
+
+	private static ConfXMLParam[] meResponse(ManagedElement managedElement) {
+		return new ConfXMLParam[] { new ConfXMLParamStart(ME_PREFIX, "attributes"),
+				new ConfXMLParamValue(ME_PREFIX, "dnPrefix", new ConfBuf(managedElement.getDnPrefix())),
+				new ConfXMLParamValue(ME_PREFIX, "userLabel", new ConfBuf(managedElement.getUserLabel())),
+				new ConfXMLParamValue(ME_PREFIX, "locationName", new ConfBuf(managedElement.getLocationName())),
+				new ConfXMLParamValue(ME_PREFIX, "managedElementTypeList", new ConfNoExists()),
+				new ConfXMLParamValue(ME_PREFIX, "vendorName", new ConfBuf(managedElement.getVendorName())),
+				new ConfXMLParamValue(ME_PREFIX, "userDefinedState", new ConfBuf(managedElement.getUserDefinedState())),
+				new ConfXMLParamValue(ME_PREFIX, "swVersion", new ConfBuf(managedElement.getSwVersion())),
+				new ConfXMLParamValue(ME_PREFIX, "priorityLabel", new ConfNoExists()),
+				new ConfXMLParamStop(ME_PREFIX, "attributes") };
+	}
+
+	private ConfXMLParam[] nfResponse(NetworkFunction nf) {
+		ConfObject openApi = getOpenApi(nf.getOperation().getSpecification());
+
+		return new ConfXMLParam[] { new ConfXMLParamStart(NF_PREFIX, "attributes"),
+				new ConfXMLParamValue(NF_PREFIX, "name", new ConfBuf(nf.getName())),
+				new ConfXMLParamValue(NF_PREFIX, "userLabel", new ConfBuf(nf.getUserLabel())),
+				new ConfXMLParamValue(NF_PREFIX, "swVersion", new ConfBuf(nf.getSwVersion())),
+				new ConfXMLParamValue(NF_PREFIX, "nfType", new ConfBuf(nf.getNfType())),
+				new ConfXMLParamValue(NF_PREFIX, "state", new ConfEnumeration(getStateValue(nf.getState()))),
+				new ConfXMLParamValue(NF_PREFIX, "administrativeState", new ConfEnumeration(1)),
+				new ConfXMLParamValue(NF_PREFIX, "operationalState", new ConfEnumeration(1)),
+				new ConfXMLParamValue(NF_PREFIX, "usageState", new ConfEnumeration(1)),
+				new ConfXMLParamStop(NF_PREFIX, "attributes"), new ConfXMLParamStart(NF_PREFIX, "operations"),
+				new ConfXMLParamStart(NF_PREFIX, "specification"),
+				new ConfXMLParamValue(NF_PREFIX, "openapi", openApi),
+				new ConfXMLParamStop(NF_PREFIX, "specification"), new ConfXMLParamStop(NF_PREFIX, "operations"), };
+	}
+
+	private ConfXMLParam[] nfServiceResponse(NFService nfService) {
+		ConfObject openApi = getOpenApi(nfService.getServiceOperation().getSpecification());
+		ConfEnumeration state = new ConfEnumeration(getStateValue(nfService.getState()));
+
+		if (nfService.isHaEnabled()) {
+
+			LOG.debug("HA is enabled");
+			return new ConfXMLParam[] { new ConfXMLParamStart(NF_PREFIX, "attributes"),
+					new ConfXMLParamValue(NF_PREFIX, "name", new ConfBuf(nfService.getName())),
+					new ConfXMLParamValue(NF_PREFIX, "userLabel", new ConfBuf(nfService.getUserLabel())),
+					new ConfXMLParamValue(NF_PREFIX, "nfServiceType", new ConfBuf(nfService.getNfServiceType())),
+					new ConfXMLParamValue(NF_PREFIX, "swVersion", new ConfBuf(nfService.getSwVersion())),
+					new ConfXMLParamValue(NF_PREFIX, "state", state),
+					new ConfXMLParamValue(NF_PREFIX, "administrativeState", new ConfEnumeration(1)),
+					new ConfXMLParamValue(NF_PREFIX, "operationalState", new ConfEnumeration(1)),
+					new ConfXMLParamValue(NF_PREFIX, "usageState", new ConfEnumeration(1)),
+					new ConfXMLParamValue(NF_PREFIX, "registrationState", new ConfNoExists()),
+					new ConfXMLParamStart(NF_PREFIX, "ha"),
+					new ConfXMLParamValue(NF_PREFIX, "monitoringMode",
+							new ConfEnumeration(getMonitoringMode(nfService.getMonitoringMode()))),
+					new ConfXMLParamValue(NF_PREFIX, "mode", new ConfEnumeration(getMode(nfService.getMode()))),
+					new ConfXMLParamValue(NF_PREFIX, "numStandby", new ConfInt8(nfService.getNumStandby())),
+					new ConfXMLParamStop(NF_PREFIX, "ha"), new ConfXMLParamStop(NF_PREFIX, "attributes"),
+					new ConfXMLParamStart(NF_PREFIX, "operations"), new ConfXMLParamStart(NF_PREFIX, "specification"),
+					new ConfXMLParamValue(NF_PREFIX, "openapi", openApi),
+					new ConfXMLParamStop(NF_PREFIX, "specification"), new ConfXMLParamStop(NF_PREFIX, "operations"), };
+		}
+
+		LOG.debug("HA is disabled");
+		return new ConfXMLParam[] { new ConfXMLParamStart(NF_PREFIX, "attributes"),
+				new ConfXMLParamValue(NF_PREFIX, "name", new ConfBuf(nfService.getName())),
+				new ConfXMLParamValue(NF_PREFIX, "userLabel", new ConfBuf(nfService.getUserLabel())),
+				new ConfXMLParamValue(NF_PREFIX, "swVersion", new ConfBuf(nfService.getSwVersion())),
+				new ConfXMLParamValue(NF_PREFIX, "nfServiceType", new ConfBuf(nfService.getNfServiceType())),
+				new ConfXMLParamValue(NF_PREFIX, "state", state),
+				new ConfXMLParamValue(NF_PREFIX, "administrativeState", new ConfEnumeration(1)),
+				new ConfXMLParamValue(NF_PREFIX, "operationalState", new ConfEnumeration(1)),
+				new ConfXMLParamValue(NF_PREFIX, "usageState", new ConfEnumeration(1)),
+				new ConfXMLParamValue(NF_PREFIX, "registrationState", new ConfNoExists()),
+				new ConfXMLParamValue(NF_PREFIX, "ha", new ConfNoExists()),
+				new ConfXMLParamStop(NF_PREFIX, "attributes"), new ConfXMLParamStart(NF_PREFIX, "operations"),
+				new ConfXMLParamStart(NF_PREFIX, "specification"),
+				new ConfXMLParamValue(NF_PREFIX, "openapi", openApi),
+				new ConfXMLParamStop(NF_PREFIX, "specification"), new ConfXMLParamStop(NF_PREFIX, "operations"), };
+	}
+
+	private ConfXMLParam[] nfServiceInstanceResponse(NFServiceInstance nfSvcInstance) {
+		return new ConfXMLParam[] { new ConfXMLParamStart(NF_PREFIX, "attributes"),
+				new ConfXMLParamValue(NF_PREFIX, "name", new ConfBuf(nfSvcInstance.getName())),
+				new ConfXMLParamValue(NF_PREFIX, "userLabel", new ConfBuf(nfSvcInstance.getUserLabel())),
+				new ConfXMLParamValue(NF_PREFIX, "state", new ConfEnumeration(getStateValue(nfSvcInstance.getState()))),
+				new ConfXMLParamValue(NF_PREFIX, "haRole", new ConfEnumeration(getHaRole(nfSvcInstance.getHaRole()))),
+				new ConfXMLParamValue(NF_PREFIX, "msuid", new ConfBuf(nfSvcInstance.getMsUid())),
+				new ConfXMLParamStop(NF_PREFIX, "attributes") };
+	}
+
+	// base64 openapi specification, if it has servers
+	private ConfObject getOpenApi(JsonNode spec) {
+
+		// TODO: confirm this check
+		if (spec != null && spec.get("servers") != null && spec.get("servers").size() != 0) {
+			LOG.debug("Specification found");
+			try {
+				return new ConfBuf(cbUtil.encodeBase64(MAPPER.writeValueAsString(spec)));
+			} catch (JsonProcessingException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return new ConfNoExists();
+	}
+
 	private int getMode(String mode) {
 		if (mode.equals("hotStandby"))
 			return 0;
@@ -662,33 +661,4 @@ public class StateCallbackHandler {
 		LOG.debug("State: " + state.value() + ", Value: " + stateValue);
 		return stateValue;
 	}
-
-	private void getManagedElement() throws DpCallbackException {
-		try {
-			String meJson = restTemplate.exchange(cbUtil.getTopoFqdn() + "/api/v1/tmaas/topo", HttpMethod.GET,
-					new HttpEntity<String>(Constants.EMPTY_STRING), String.class).getBody();
-
-			managedElement = MAPPER.readValue(meJson, ManagedElement.class);
-			LOG.debug(MAPPER.writeValueAsString(managedElement));
-
-		} catch (HttpClientErrorException | HttpServerErrorException e) {
-
-			// throw error in case tmaas returns 4xx/5xx
-			LOG.error("Request failed with code: " + e.getStatusCode() + ", body: " + e.getResponseBodyAsString());
-			throw new DpCallbackException(
-					"Topo-Engine returned: " + e.getResponseBodyAsString() + ", Code: " + e.getStatusCode());
-
-		} catch (ResourceAccessException e) {
-
-			// throw IO errors
-			LOG.error(e.getMessage(), e);
-			throw new DpCallbackException("Unable to reach TMaaS");
-
-		} catch (Exception e) {
-
-			// throw error
-			LOG.error(e.getMessage(), e);
-			throw new DpCallbackException("Exception: " + e.getMessage());
-		}
-	}
 }
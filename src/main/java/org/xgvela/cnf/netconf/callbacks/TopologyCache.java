@@ -0,0 +1,288 @@
+// Copyright 2020 Mavenir
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.xgvela.cnf.netconf.callbacks;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.xgvela.cnf.ConfigServiceApplication;
+import org.xgvela.cnf.tmaas.model.ManagedElement;
+import org.xgvela.cnf.tmaas.model.NFService;
+import org.xgvela.cnf.tmaas.model.NFServiceInstance;
+import org.xgvela.cnf.tmaas.model.NetworkFunction;
+import org.xgvela.cnf.tmaas.model.Operations;
+import org.xgvela.cnf.tmaas.model.PodNetworksStatus;
+import org.xgvela.cnf.util.MetricsUtil;
+import com.tailf.dp.DpCallbackException;
+import com.tailf.dp.DpTrans;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+
+/**
+ * TMaaS topology (ManagedElement tree) shared by the state callbacks. A copy
+ * older than the TTL is still served while a single background refresh
+ * fetches a new one, which is then swapped in atomically. Past the max
+ * staleness the refresh is done inline. Each copy is indexed once when fetched
+ * and every transaction sees one snapshot from its first callback until it
+ * finishes. The response is parsed as it streams in, without buffering the
+ * body and skipping the attributes the model does not map. While topology
+ * events are applied ({@link TopologyUpdates}) the current copy is kept up to
+ * date by them and is not polled, until it is older than the max staleness
+ * without an event or resync.
+ */
+@Component
+public class TopologyCache {
+
+	private static final Logger LOG = LogManager.getLogger(TopologyCache.class);
+	private static final String TOPO_API = "/api/v1/tmaas/topo";
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	// unmapped attributes are skipped instead of collected
+	static final ObjectMapper TOPO_MAPPER = MAPPER.copy().addMixIn(ManagedElement.class, SkipUnknown.class)
+			.addMixIn(NetworkFunction.class, SkipUnknown.class).addMixIn(NFService.class, SkipUnknown.class)
+			.addMixIn(NFServiceInstance.class, SkipUnknown.class).addMixIn(Operations.class, SkipUnknown.class)
+			.addMixIn(PodNetworksStatus.class, SkipUnknown.class)
+			.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+	private static final ObjectReader READER = TOPO_MAPPER.readerFor(ManagedElement.class);
+
+	private static final Gauge cacheAge = MetricsUtil.addGauge("cmaas_topo_cache_age_seconds",
+			"Age of the cached TMaaS topology");
+	private static final Histogram refreshDuration = MetricsUtil.addHistogram("cmaas_topo_refresh_duration_seconds",
+			"Time taken to fetch and parse the TMaaS topology", 0.01, 0.05, 0.1, 0.25, 0.5, 1, 2, 5, 10);
+	private static final Histogram parseDuration = MetricsUtil.addHistogram("cmaas_topo_parse_duration_seconds",
+			"Time taken to parse the TMaaS topology response", 0.001, 0.005, 0.01, 0.05, 0.1, 0.25, 0.5, 1, 2, 5);
+	private static final Gauge responseBytes = MetricsUtil.addGauge("cmaas_topo_response_bytes",
+			"Size of the last parsed TMaaS topology response");
+	private static final Counter refreshFailureTotal = MetricsUtil.addCounter("cmaas_topo_refresh_failure_total",
+			"Number of failed TMaaS topology refreshes");
+
+	@Autowired
+	@Qualifier(ConfigServiceApplication.TOPO_REST)
+	private RestTemplate restTemplate;
+
+	@Autowired
+	private CallbackUtil cbUtil;
+
+	@Value("${cmaas.topo.cache.ttl-ms:5000}")
+	private long ttlMs;
+
+	@Value("${cmaas.topo.cache.max-stale-ms:60000}")
+	private long maxStaleMs;
+
+	@Value("${cmaas.topo.snapshot.max-age-ms:300000}")
+	private long snapshotMaxAgeMs;
+
+	private final AtomicReference<Snapshot> current = new AtomicReference<>();
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+
+	// current copy is kept up to date by topology events
+	private volatile boolean live = false;
+
+	// <transaction: snapshot seen by it>
+	private final Map<Integer, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+	private ExecutorService refresher;
+
+	@PostConstruct
+	public void init() {
+		refresher = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "topo-refresh");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		cacheAge.setChild(new Gauge.Child() {
+			@Override
+			public double get() {
+				Snapshot snapshot = current.get();
+				return snapshot == null ? 0 : (System.currentTimeMillis() - snapshot.fetchedAt) / 1000.0;
+			}
+		});
+	}
+
+	/**
+	 * @return indexed topology as seen by the transaction
+	 */
+	public TopologyIndex get(DpTrans trans) throws DpCallbackException {
+		Snapshot snapshot = snapshots.get(trans.getTransaction());
+		if (snapshot == null) {
+			snapshot = new Snapshot(getCurrent());
+			snapshots.put(trans.getTransaction(), snapshot);
+			expireSnapshots();
+		}
+		return snapshot.index;
+	}
+
+	// transaction finished, drop its snapshot
+	public void release(int transaction) {
+		snapshots.remove(transaction);
+	}
+
+	void setLive(boolean live) {
+		this.live = live;
+	}
+
+	// latest topology, null if never fetched
+	ManagedElement getManagedElement() {
+		Snapshot snapshot = current.get();
+		return snapshot == null ? null : snapshot.index.getManagedElement();
+	}
+
+	// full fetch, replaces the current copy
+	ManagedElement resync() throws DpCallbackException {
+		return refresh().index.getManagedElement();
+	}
+
+	// topology updated in memory, replaces the current copy
+	void publish(ManagedElement managedElement) {
+		current.set(new Snapshot(managedElement));
+	}
+
+	private Snapshot getCurrent() throws DpCallbackException {
+		Snapshot snapshot = current.get();
+		long age = snapshot == null ? Long.MAX_VALUE : System.currentTimeMillis() - snapshot.fetchedAt;
+
+		if (age <= ttlMs || (live && age <= maxStaleMs))
+			return snapshot;
+
+		if (age <= maxStaleMs) {
+
+			// serve stale, revalidate in background
+			if (refreshing.compareAndSet(false, true)) {
+				refresher.execute(() -> {
+					try {
+						refresh();
+					} catch (DpCallbackException e) {
+						LOG.error("Background topology refresh failed: " + e.getMessage());
+					} finally {
+						refreshing.set(false);
+					}
+				});
+			}
+			return snapshot;
+		}
+		return refresh();
+	}
+
+	private Snapshot refresh() throws DpCallbackException {
+		Histogram.Timer timer = refreshDuration.startTimer();
+		try {
+			ManagedElement managedElement = restTemplate.execute(cbUtil.getTopoFqdn() + TOPO_API, HttpMethod.GET,
+					null, TopologyCache::parse);
+
+			Snapshot snapshot = new Snapshot(managedElement);
+			if (LOG.isDebugEnabled())
+				LOG.debug(MAPPER.writeValueAsString(snapshot.index.getManagedElement()));
+
+			current.set(snapshot);
+			return snapshot;
+
+		} catch (HttpClientErrorException | HttpServerErrorException e) {
+
+			// throw error in case tmaas returns 4xx/5xx
+			refreshFailureTotal.inc();
+			LOG.error("Request failed with code: " + e.getStatusCode() + ", body: " + e.getResponseBodyAsString());
+			throw new DpCallbackException(
+					"Topo-Engine returned: " + e.getResponseBodyAsString() + ", Code: " + e.getStatusCode());
+
+		} catch (ResourceAccessException e) {
+
+			// throw IO errors
+			refreshFailureTotal.inc();
+			LOG.error(e.getMessage(), e);
+			throw new DpCallbackException("Unable to reach TMaaS");
+
+		} catch (Exception e) {
+
+			// throw error
+			refreshFailureTotal.inc();
+			LOG.error(e.getMessage(), e);
+			throw new DpCallbackException("Exception: " + e.getMessage());
+
+		} finally {
+			timer.observeDuration();
+		}
+	}
+
+	// read straight from the response stream
+	private static ManagedElement parse(ClientHttpResponse response) throws IOException {
+		Histogram.Timer timer = parseDuration.startTimer();
+		try (JsonParser parser = READER.getFactory().createParser(response.getBody())) {
+			ManagedElement managedElement = READER.readValue(parser);
+
+			double seconds = timer.observeDuration();
+			long bytes = parser.getCurrentLocation().getByteOffset();
+			responseBytes.set(bytes);
+			LOG.debug("Parsed topology of " + bytes + " bytes in " + seconds + "s");
+			return managedElement;
+		}
+	}
+
+	// snapshots of transactions whose finish was never seen
+	private void expireSnapshots() {
+		long now = System.currentTimeMillis();
+		snapshots.values().removeIf(snapshot -> now - snapshot.takenAt > snapshotMaxAgeMs);
+	}
+
+	private abstract static class SkipUnknown {
+		@JsonAnySetter(enabled = false)
+		abstract void setAdditionalProperty(String name, Object value);
+	}
+
+	private static class Snapshot {
+		private final TopologyIndex index;
+		private final long fetchedAt;
+		private final long takenAt = System.currentTimeMillis();
+
+		private Snapshot(ManagedElement managedElement) {
+			this.index = TopologyIndex.build(managedElement);
+			this.fetchedAt = takenAt;
+		}
+
+		// same topology, taken by a transaction now
+		private Snapshot(Snapshot snapshot) {
+			this.index = snapshot.index;
+			this.fetchedAt = snapshot.fetchedAt;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+// Copyright 2020 Mavenir
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.xgvela.cnf.netconf.callbacks;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.xgvela.cnf.tmaas.model.ManagedElement;
+import org.xgvela.cnf.tmaas.model.NFService;
+import org.xgvela.cnf.tmaas.model.NFServiceInstance;
+import org.xgvela.cnf.tmaas.model.NetworkFunction;
+import org.xgvela.cnf.tmaas.model.PodNetworksStatus;
+
+/**
+ * Read-only lookup index over one topology snapshot, built once when the
+ * snapshot is fetched. Ids are matched case-insensitively, a keypath resolves
+ * with one map lookup per level. On duplicate ids the first element wins, as
+ * the list scans it replaces did.
+ */
+public final class TopologyIndex {
+
+	private final ManagedElement managedElement;
+
+	// <nf id: nf node>
+	private final Map<String, NfNode> nfs;
+
+	// <key: value derived from this snapshot only>
+	private final Map<String, Object> cached = new ConcurrentHashMap<>();
+
+	private TopologyIndex(ManagedElement managedElement) {
+		this.managedElement = managedElement;
+		this.nfs = index(managedElement.getElemList(), NetworkFunction::getId, NfNode::new);
+	}
+
+	public static TopologyIndex build(ManagedElement managedElement) {
+		return new TopologyIndex(managedElement);
+	}
+
+	public ManagedElement getManagedElement() {
+		return managedElement;
+	}
+
+	public NetworkFunction getNf(String nfId) {
+		NfNode nf = nfs.get(normalize(nfId));
+		return nf == null ? null : nf.nf;
+	}
+
+	public NFService getNfService(String nfId, String nfSvcId) {
+		SvcNode nfSvc = getSvcNode(nfId, nfSvcId);
+		return nfSvc == null ? null : nfSvc.nfSvc;
+	}
+
+	public NFServiceInstance getNfServiceInstance(String nfId, String nfSvcId, String nfSvcInstanceId) {
+		InstanceNode nfsi = getInstanceNode(nfId, nfSvcId, nfSvcInstanceId);
+		return nfsi == null ? null : nfsi.nfsi;
+	}
+
+	public PodNetworksStatus getPodNetworks(String nfId, String nfSvcId, String nfSvcInstanceId, String name) {
+		InstanceNode nfsi = getInstanceNode(nfId, nfSvcId, nfSvcInstanceId);
+		return nfsi == null ? null : nfsi.nws.get(normalize(name));
+	}
+
+	/**
+	 * @return value computed once per snapshot (e.g. a callback response),
+	 *         shared by all readers which must not modify it
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getCached(String key, Function<String, T> builder) {
+		return (T) cached.computeIfAbsent(key, builder);
+	}
+
+	private SvcNode getSvcNode(String nfId, String nfSvcId) {
+		NfNode nf = nfs.get(normalize(nfId));
+		return nf == null ? null : nf.nfSvcs.get(normalize(nfSvcId));
+	}
+
+	private InstanceNode getInstanceNode(String nfId, String nfSvcId, String nfSvcInstanceId) {
+		SvcNode nfSvc = getSvcNode(nfId, nfSvcId);
+		return nfSvc == null ? null : nfSvc.nfsis.get(normalize(nfSvcInstanceId));
+	}
+
+	private static String normalize(String id) {
+		return id == null ? null : id.toLowerCase();
+	}
+
+	private static <T, N> Map<String, N> index(List<T> elements, Function<T, String> id, Function<T, N> node) {
+		if (elements == null || elements.isEmpty())
+			return Collections.emptyMap();
+
+		Map<String, N> map = new HashMap<>();
+		elements.forEach(element -> {
+			String key = normalize(id.apply(element));
+			if (key != null && !map.containsKey(key))
+				map.put(key, node.apply(element));
+		});
+		return Collections.unmodifiableMap(map);
+	}
+
+	private static class NfNode {
+		private final NetworkFunction nf;
+		private final Map<String, SvcNode> nfSvcs;
+
+		private NfNode(NetworkFunction nf) {
+			this.nf = nf;
+			this.nfSvcs = index(nf.getElemList(), NFService::getId, SvcNode::new);
+		}
+	}
+
+	private static class SvcNode {
+		private final NFService nfSvc;
+		private final Map<String, InstanceNode> nfsis;
+
+		private SvcNode(NFService nfSvc) {
+			this.nfSvc = nfSvc;
+			this.nfsis = index(nfSvc.getElemList(), NFServiceInstance::getId, InstanceNode::new);
+		}
+	}
+
+	private static class InstanceNode {
+		private final NFServiceInstance nfsi;
+		private final Map<String, PodNetworksStatus> nws;
+
+		private InstanceNode(NFServiceInstance nfsi) {
+			this.nfsi = nfsi;
+			this.nws = index(nfsi.getNws(), PodNetworksStatus::getName, Function.identity());
+		}
+	}
+}
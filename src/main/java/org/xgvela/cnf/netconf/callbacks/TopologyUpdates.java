@@ -0,0 +1,318 @@
+// Copyright 2020 Mavenir
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.xgvela.cnf.netconf.callbacks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.xgvela.cnf.tmaas.model.ManagedElement;
+import org.xgvela.cnf.tmaas.model.NFService;
+import org.xgvela.cnf.tmaas.model.NFServiceInstance;
+import org.xgvela.cnf.tmaas.model.NetworkFunction;
+import org.xgvela.cnf.util.MetricsUtil;
+import org.xgvela.cnf.util.NatsUtil;
+import com.tailf.dp.DpCallbackException;
+
+import io.prometheus.client.Counter;
+
+/**
+ * Applies topology change events published by TMaaS on NATS to the cached
+ * topology, so state callbacks are served from memory without polling. Each
+ * event carries a sequence number and one change:
+ *
+ * <pre>
+ * {"seq": 42, "op": "UPSERT" | "DELETE",
+ *  "nfId": "..", "nfServiceId": "..", "nfServiceInstanceId": "..",
+ *  "data": { element as returned by the topology API }}
+ * </pre>
+ *
+ * The most specific id present selects the element, none selects the managed
+ * element itself. An upserted NF or NF service keeps its current children
+ * unless data contains them. Elements are never modified in place: the changed
+ * path is copied and a new snapshot published, so transactions holding the
+ * previous one are not affected. On a sequence gap, or an event that does not
+ * fit the topology, the full topology is fetched again. The subscription is
+ * made before the first fetch, so no event is missed until the first sequence
+ * is known; from then on every event must follow the last one seen, across
+ * fetches as well.
+ */
+@Component
+public class TopologyUpdates {
+
+	private static final Logger LOG = LogManager.getLogger(TopologyUpdates.class);
+
+	private static final Counter eventsTotal = MetricsUtil.addCounter("cmaas_topo_events_total",
+			"Topology events received from TMaaS by result", new String[] { "result" });
+	private static final Counter resyncTotal = MetricsUtil.addCounter("cmaas_topo_resync_total",
+			"Full topology fetches done while following topology events");
+
+	// copies an element without its children
+	private static final ObjectMapper SHALLOW = new ObjectMapper()
+			.addMixIn(ManagedElement.class, ManagedElementChildren.class)
+			.addMixIn(NetworkFunction.class, NetworkFunctionChildren.class)
+			.addMixIn(NFService.class, NFServiceChildren.class);
+
+	@Autowired
+	private TopologyCache topologyCache;
+
+	@Value("${cmaas.topo.events.enabled:false}")
+	private boolean enabled;
+
+	@Value("${cmaas.topo.events.subject:TOPOLOGY-CHANGE}")
+	private String subject;
+
+	@Value("${cmaas.topo.events.resync-interval-ms:30000}")
+	private long resyncIntervalMs;
+
+	private ScheduledExecutorService executor;
+
+	// events are only applied on top of a full fetch
+	private boolean synced = false;
+
+	// sequence of the last event applied or covered by a full fetch, -1 until the
+	// first event
+	private long lastSeq = -1;
+
+	public void init() {
+		if (!enabled) {
+			LOG.info("Topology events disabled, topology is polled");
+			return;
+		}
+
+		// events and full fetches are handled in order on one thread
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "topo-events");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		// subscribed first, changes made while fetching arrive as events
+		NatsUtil.getConnection().createDispatcher(message -> {
+			byte[] data = message.getData();
+			executor.execute(() -> onEvent(data));
+		}).subscribe(subject);
+		LOG.info("Subscribed to NATS subject: " + subject);
+
+		executor.execute(this::resync);
+
+		if (resyncIntervalMs > 0)
+			executor.scheduleWithFixedDelay(this::resync, resyncIntervalMs, resyncIntervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	private void onEvent(byte[] data) {
+		JsonNode event;
+		try {
+			event = TopologyCache.TOPO_MAPPER.readTree(data);
+		} catch (IOException e) {
+			eventsTotal.labels("invalid").inc();
+			LOG.error("Invalid topology event: " + e.getMessage());
+			return;
+		}
+		LOG.debug("Topology event: " + event);
+
+		long seq = event.path("seq").asLong(-1);
+		if (!synced) {
+
+			// fetched after the event was received, so it is covered
+			eventsTotal.labels("unsynced").inc();
+			lastSeq = Math.max(lastSeq, seq);
+			resync();
+			return;
+		}
+
+		if (lastSeq >= 0 && seq >= 0 && seq <= lastSeq) {
+			eventsTotal.labels("duplicate").inc();
+			return;
+		}
+
+		if (lastSeq >= 0 && seq != lastSeq + 1) {
+
+			// events were missed, fetch everything again
+			eventsTotal.labels("gap").inc();
+			LOG.warn("Topology event gap, expected: " + (lastSeq + 1) + ", received: " + seq);
+			lastSeq = Math.max(lastSeq, seq);
+			resync();
+			return;
+		}
+
+		try {
+			topologyCache.publish(apply(topologyCache.getManagedElement(), event));
+			lastSeq = seq;
+			eventsTotal.labels("applied").inc();
+
+		} catch (IOException | IllegalArgumentException e) {
+			eventsTotal.labels("inconsistent").inc();
+			LOG.warn("Topology event not applicable: " + e.getMessage() + ", event: " + event);
+			lastSeq = Math.max(lastSeq, seq);
+			resync();
+		}
+	}
+
+	private void resync() {
+		resyncTotal.inc();
+		try {
+			topologyCache.resync();
+
+			// lastSeq kept, the next event must follow it
+			synced = true;
+			topologyCache.setLive(true);
+			LOG.info("Topology resynced");
+
+		} catch (DpCallbackException e) {
+
+			// back to polling until the next event or resync succeeds
+			synced = false;
+			topologyCache.setLive(false);
+			LOG.error("Topology resync failed: " + e.getMessage());
+		}
+	}
+
+	private static ManagedElement apply(ManagedElement managedElement, JsonNode event) throws IOException {
+		boolean delete = "DELETE".equalsIgnoreCase(event.path("op").asText());
+		JsonNode data = event.get("data");
+		if (!delete && (data == null || !data.isObject()))
+			throw new IllegalArgumentException("data missing");
+
+		String nfId = text(event, "nfId");
+		String nfSvcId = text(event, "nfServiceId");
+		String nfSvcInstanceId = text(event, "nfServiceInstanceId");
+
+		if (nfId == null) {
+			if (delete)
+				throw new IllegalArgumentException("managed element cannot be deleted");
+
+			ManagedElement updated = read(data, ManagedElement.class);
+			if (!data.has("network_functions"))
+				updated.setElemList(managedElement.getElemList());
+			return updated;
+		}
+
+		ManagedElement meCopy = copy(managedElement, ManagedElement.class);
+		NetworkFunction nf = find(managedElement.getElemList(), nfId, NetworkFunction::getId);
+
+		if (nfSvcId == null) {
+			if (delete) {
+				meCopy.setElemList(remove(managedElement.getElemList(), nfId, NetworkFunction::getId));
+			} else {
+				NetworkFunction updated = read(data, NetworkFunction.class);
+				if (nf != null && !data.has("nf_services"))
+					updated.setElemList(nf.getElemList());
+				meCopy.setElemList(upsert(managedElement.getElemList(), nfId, updated, NetworkFunction::getId));
+			}
+			return meCopy;
+		}
+
+		if (nf == null)
+			throw new IllegalArgumentException("unknown NF: " + nfId);
+
+		NetworkFunction nfCopy = copy(nf, NetworkFunction.class);
+		NFService nfSvc = find(nf.getElemList(), nfSvcId, NFService::getId);
+
+		if (nfSvcInstanceId == null) {
+			if (delete) {
+				nfCopy.setElemList(remove(nf.getElemList(), nfSvcId, NFService::getId));
+			} else {
+				NFService updated = read(data, NFService.class);
+				if (nfSvc != null && !data.has("nf_service_instances"))
+					updated.setElemList(nfSvc.getElemList());
+				nfCopy.setElemList(upsert(nf.getElemList(), nfSvcId, updated, NFService::getId));
+			}
+
+		} else {
+			if (nfSvc == null)
+				throw new IllegalArgumentException("unknown NF service: " + nfId + "/" + nfSvcId);
+
+			NFService nfSvcCopy = copy(nfSvc, NFService.class);
+			nfSvcCopy.setElemList(delete ? remove(nfSvc.getElemList(), nfSvcInstanceId, NFServiceInstance::getId)
+					: upsert(nfSvc.getElemList(), nfSvcInstanceId, read(data, NFServiceInstance.class),
+							NFServiceInstance::getId));
+			nfCopy.setElemList(upsert(nf.getElemList(), nfSvcId, nfSvcCopy, NFService::getId));
+		}
+
+		meCopy.setElemList(upsert(managedElement.getElemList(), nfId, nfCopy, NetworkFunction::getId));
+		return meCopy;
+	}
+
+	private static String text(JsonNode event, String field) {
+		JsonNode value = event.get(field);
+		return value == null || value.isNull() ? null : value.asText();
+	}
+
+	private static <T> T read(JsonNode data, Class<T> type) throws IOException {
+		return TopologyCache.TOPO_MAPPER.treeToValue(data, type);
+	}
+
+	// attributes only, children list is left empty
+	private static <T> T copy(T element, Class<T> type) {
+		return SHALLOW.convertValue(element, type);
+	}
+
+	private static <T> T find(List<T> elements, String id, Function<T, String> getId) {
+		for (T element : elements) {
+			if (id.equalsIgnoreCase(getId.apply(element)))
+				return element;
+		}
+		return null;
+	}
+
+	// new list with the element replaced, or appended if not present
+	private static <T> List<T> upsert(List<T> elements, String id, T updated, Function<T, String> getId) {
+		List<T> list = new ArrayList<>(elements.size() + 1);
+		boolean found = false;
+		for (T element : elements) {
+			if (!found && id.equalsIgnoreCase(getId.apply(element))) {
+				list.add(updated);
+				found = true;
+			} else {
+				list.add(element);
+			}
+		}
+		if (!found)
+			list.add(updated);
+		return list;
+	}
+
+	private static <T> List<T> remove(List<T> elements, String id, Function<T, String> getId) {
+		List<T> list = new ArrayList<>(elements);
+		list.removeIf(element -> id.equalsIgnoreCase(getId.apply(element)));
+		return list;
+	}
+
+	@JsonIgnoreProperties({ "network_functions" })
+	private abstract static class ManagedElementChildren {
+	}
+
+	@JsonIgnoreProperties({ "nf_services" })
+	private abstract static class NetworkFunctionChildren {
+	}
+
+	@JsonIgnoreProperties({ "nf_service_instances" })
+	private abstract static class NFServiceChildren {
+	}
+}
@@ -14,12 +14,21 @@
 
 package org.xgvela.cnf.netconf.models;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 public class CallbackModel {
 
 	private String yangNamespace;
 	private String yangPrefix;
 	private boolean restart;
 
+	// changes seen in the transaction, null once more than the limit were seen
+	@JsonIgnore
+	private List<ConfigChange> changes = new ArrayList<>();
+
 	public String getYangNamespace() {
 		return yangNamespace;
 	}
@@ -44,6 +53,20 @@ public class CallbackModel {
 		this.restart = restart;
 	}
 
+	public List<ConfigChange> getChanges() {
+		return changes;
+	}
+
+	public void addChange(ConfigChange change, int maxChanges) {
+		if (changes == null)
+			return;
+
+		if (changes.size() < maxChanges)
+			changes.add(change);
+		else
+			changes = null;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -0,0 +1,152 @@
+// Copyright 2020 Mavenir
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.xgvela.cnf.netconf.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.tailf.conf.ConfKey;
+import com.tailf.conf.ConfObject;
+import com.tailf.conf.ConfNamespace;
+import com.tailf.conf.ConfTag;
+import com.tailf.conf.ConfValue;
+import com.tailf.maapi.Maapi;
+import com.tailf.maapi.MaapiSchemas;
+
+/**
+ * One change seen by a data callback of a transaction: operation, keypath
+ * (root first) and the new value for SET_ELEM. List entries carry their key
+ * values and, if the loaded schema knows the list, the key leaf names.
+ */
+public class ConfigChange {
+
+	public static enum Operation {
+		SET, CREATE, REMOVE
+	}
+
+	private final Operation operation;
+	private final List<Segment> path;
+	private final ConfValue value;
+
+	public ConfigChange(Operation operation, ConfObject[] kp, ConfValue value) {
+		this.operation = operation;
+		this.value = value;
+
+		// keypath is leaf first
+		this.path = new ArrayList<>(kp.length);
+		String nsUri = getNamespaceUri(kp);
+		StringBuilder schemaPath = new StringBuilder();
+		for (int i = kp.length - 1; i >= 0; i--) {
+			if (kp[i] instanceof ConfTag) {
+				String tag = ((ConfTag) kp[i]).getTag();
+				schemaPath.append('/').append(tag);
+				path.add(new Segment(tag, null, null));
+
+			} else if (kp[i] instanceof ConfKey) {
+				ConfObject[] elements = ((ConfKey) kp[i]).elements();
+				String[] keys = new String[elements.length];
+				for (int j = 0; j < elements.length; j++)
+					keys[j] = elements[j].toString();
+				path.add(new Segment(null, keys, getKeyNames(nsUri, schemaPath.toString(), keys.length)));
+			}
+		}
+	}
+
+	private static String getNamespaceUri(ConfObject[] kp) {
+		if (kp.length == 0 || !(kp[kp.length - 1] instanceof ConfTag))
+			return null;
+
+		ConfNamespace namespace = ((ConfTag) kp[kp.length - 1]).getConfNamespace();
+		return namespace == null ? null : namespace.uri();
+	}
+
+	// key leaf names of the list, in key order; null if the schema does not tell
+	private static String[] getKeyNames(String nsUri, String listPath, int count) {
+		if (nsUri == null)
+			return null;
+
+		try {
+			MaapiSchemas.CSNode list = Maapi.getSchemas().findCSNode(nsUri, listPath);
+			if (list == null)
+				return null;
+
+			List<String> names = new ArrayList<>();
+			for (MaapiSchemas.CSNode child : list.getChildren()) {
+				if (child.isKey())
+					names.add(child.getTag());
+			}
+			return names.size() == count ? names.toArray(new String[0]) : null;
+
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	public Operation getOperation() {
+		return operation;
+	}
+
+	public List<Segment> getPath() {
+		return path;
+	}
+
+	public ConfValue getValue() {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return "ConfigChange [operation=" + operation + ", path=" + path + ", value=" + value + "]";
+	}
+
+	// keypath element, either a node name or the key values of a list entry
+	public static class Segment {
+		private final String tag;
+		private final String[] keys;
+		private final String[] keyNames;
+
+		private Segment(String tag, String[] keys, String[] keyNames) {
+			this.tag = tag;
+			this.keys = keys;
+			this.keyNames = keyNames;
+		}
+
+		public String getTag() {
+			return tag;
+		}
+
+		public String[] getKeys() {
+			return keys;
+		}
+
+		/**
+		 * @return names of the key leaves, same order as {@link #getKeys()}; null
+		 *         if unknown
+		 */
+		public String[] getKeyNames() {
+			return keyNames;
+		}
+
+		public boolean isKey() {
+			return keys != null;
+		}
+
+		@Override
+		public String toString() {
+			return isKey() ? Arrays.toString(keys) : tag;
+		}
+	}
+}
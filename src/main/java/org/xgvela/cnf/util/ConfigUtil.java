@@ -18,12 +18,16 @@ package org.xgvela.cnf.util;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.xgvela.cnf.Constants;
 import org.xgvela.cnf.netconf.models.CallbackModel;
 import org.xgvela.cnf.etcd.EtcdUtil;
+import org.xgvela.cnf.k8s.ConfigMapCache;
 import org.xgvela.cnf.k8s.ConfigMapWatchProcessor;
 import org.xgvela.cnf.k8s.K8sClient;
 import org.xgvela.cnf.k8s.K8sUtil;
+import org.xgvela.cnf.k8s.TmaasAnnotation;
 import org.xgvela.cnf.notification.KeyValueBean;
 import org.xgvela.cnf.notification.NotificationUtil;
 import org.xgvela.cnf.util.Utils.ConfigDatatype;
@@ -32,18 +36,30 @@ import org.xgvela.cnf.util.Utils.RootType;
 import org.xgvela.model.ConfModelMetadata;
 import org.xgvela.model.ConfigMapMetadata;
 import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
 import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Component
@@ -54,12 +70,36 @@ public class ConfigUtil {
 			.addCounter("cmaas_configmap_update_attempts_total", "Updating ConfigMap on Netconf callback- attempted");
 	private static final Counter configMapUpdateFailed = MetricsUtil.addCounter("cmaas_configmap_update_failure_total",
 			"Updating ConfigMap on Netconf callback- failed");
+	private static final Gauge updateQueueDepth = MetricsUtil.addGauge("cmaas_config_update_queue_depth",
+			"Number of NF config updates waiting per worker", new String[] { "shard" });
+	private static final Counter configMapUpdateConflicts = MetricsUtil.addCounter(
+			"cmaas_configmap_update_conflict_total", "ConfigMap updates retried because the ConfigMap had changed");
+	private static final Counter configUpdatesCoalesced = MetricsUtil.addCounter("cmaas_config_update_coalesced_total",
+			"Day-2 updates merged into the ConfigMap write or rollout of another update of the same commit",
+			new String[] { "kind" });
+	private static final Counter configPatchTotal = MetricsUtil.addCounter("cmaas_config_update_patch_total",
+			"Config updates by how the updated config was obtained", new String[] { "result" });
+	private static final Histogram updatePropagation = MetricsUtil.addHistogram(
+			"cmaas_config_update_propagation_seconds",
+			"Time from the Netconf commit (FINISH) until the NF config update was propagated", 0.05, 0.1, 0.25, 0.5,
+			1, 2, 5, 10, 30, 60, 120);
+	private static final Histogram fanoutDuration = MetricsUtil.addHistogram("cmaas_config_fanout_duration_seconds",
+			"Time taken to execute the update policy of a data key for all its microservices",
+			new String[] { "level" }, 0.01, 0.05, 0.1, 0.25, 0.5, 1, 2, 5, 10, 30);
+	private static final Counter fanoutTargets = MetricsUtil.addCounter("cmaas_config_fanout_targets_total",
+			"Microservices the update policy of a data key was executed for, by result", new String[] { "result" });
 
 	private static final ObjectMapper MAPPER = new ObjectMapper();
 
+	private static final String UPDATE_MODE_FULL = "full";
+	private static final String UPDATE_MODE_VERIFY = "verify";
+
 	@Autowired
 	private K8sClient k8sClient;
 
+	@Autowired
+	private ConfigMapCache configMapCache;
+
 	@Autowired
 	private EtcdUtil etcd;
 
@@ -69,13 +109,53 @@ public class ConfigUtil {
 	@Autowired
 	private JsonUtil jsonUtil;
 
+	@Value("${cmaas.config.update.workers:4}")
+	private int updateWorkers;
+
+	// incremental: patch from the transaction's changes, full read as fallback
+	// verify: as incremental, checked against the full read
+	// full: always read the full config from Netconf
+	@Value("${cmaas.config.update.mode:incremental}")
+	private String updateMode;
+
+	@Value("${cmaas.config.update.conflict-retries:5}")
+	private int conflictRetries;
+
+	@Value("${cmaas.config.update.fanout-parallelism:8}")
+	private int fanoutParallelism;
+
+	// updates of one NF are applied in commit order, other NFs in parallel
+	private KeyedExecutor updateExecutor;
+
+	// change-set pushes and rollouts in flight, over all update workers
+	private Semaphore fanoutPermits;
+	private ExecutorService rolloutExecutor;
+
+	@PostConstruct
+	public void init() {
+		updateExecutor = new KeyedExecutor("config-update", updateWorkers, updateQueueDepth);
+
+		fanoutPermits = new Semaphore(Math.max(1, fanoutParallelism));
+		rolloutExecutor = Executors.newFixedThreadPool(Math.max(1, fanoutParallelism), runnable -> {
+			Thread thread = new Thread(runnable, "config-rollout");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
 	public static void loadMetadata(ConfigMap cmap) {
 
 		String cmapName = cmap.getMetadata().getName();
 		String cmapNamespace = cmap.getMetadata().getNamespace();
+
+		TmaasAnnotation tmaas = TmaasAnnotation.of(cmap);
+		if (tmaas == null) {
+			LOG.error("No valid tmaas annotation on ConfigMap: " + cmapName + ", Namespace: " + cmapNamespace);
+			return;
+		}
+
 		try {
-			String nfName = MAPPER.readTree(cmap.getMetadata().getAnnotations().get(Constants.ANN_TMAAS))
-					.get(Constants.NF_ID).asText();
+			String nfName = tmaas.getNfId();
 
 			Map<String, String> cmapData = cmap.getData();
 			LOG.debug("NF ID: " + nfName + ", Cmap Key: " + cmapName + "/" + cmapNamespace + ", Keys: "
@@ -184,51 +264,80 @@ public class ConfigUtil {
 		return confModel;
 	}
 
-	public void resolveConfigType(List<CallbackModel> updateModels) {
+	/**
+	 * Queues the updates of a committed transaction, one task per NF, and returns
+	 * without waiting for them.
+	 *
+	 * @param committedAt System.nanoTime() of the commit
+	 */
+	public void resolveConfigType(List<CallbackModel> updateModels, long committedAt) {
 
 		// <nfId: [config-1, config-2, ...]>
 		HashMap<String, List<CallbackModel>> configPerNf = getConfigPerNf(updateModels);
 
-		// iterate through each NF and evaluate whether its day 1 or day 2
-		configPerNf.forEach((nfId, cbModels) -> {
-			LOG.debug("Evaluating state for NF: " + nfId);
+		configPerNf.forEach((nfId, cbModels) -> updateExecutor.execute(nfId, () -> {
+			try {
+				resolveConfigType(nfId, cbModels);
+			} finally {
+				updatePropagation.observe((System.nanoTime() - committedAt) / 1e9);
+			}
+		}));
+	}
 
-			if (nfId.equals(ConfigMapWatchProcessor.selfNfId) || SubscriptionManager.readyNfs.contains(nfId)
-					|| etcd.isNfActive(nfId)) {
+	// evaluate whether the NF's update is day 1 or day 2
+	private void resolveConfigType(String nfId, List<CallbackModel> cbModels) {
+		LOG.debug("Evaluating state for NF: " + nfId);
 
-				// mark as day 2 config
-				LOG.debug("NF is marked active, proceeding with DAY_2 flow");
+		if (nfId.equals(ConfigMapWatchProcessor.selfNfId) || SubscriptionManager.readyNfs.contains(nfId)
+				|| etcd.isNfActive(nfId)) {
 
-				cbModels.forEach(cbModel -> {
-					try {
-						update(cbModel, ConfigMode.DAY_2);
-					} catch (JsonProcessingException e) {
-						LOG.error(e.getMessage());
-					}
-				});
+			// mark as day 2 config
+			LOG.debug("NF is marked active, proceeding with DAY_2 flow");
 
-			} else {
-
-				// mark as day 1 config
-				LOG.debug("NF is not marked active, proceeding with DAY_1 flow");
+			// changes to the yangs of one configmap are written together
+			Map<String, ConfigMapUpdate> day2Updates = new LinkedHashMap<>();
+			cbModels.forEach(cbModel -> {
+				try {
+					update(cbModel, ConfigMode.DAY_2, day2Updates);
+				} catch (JsonProcessingException e) {
+					LOG.error(e.getMessage());
+				}
+			});
 
-				// update configmaps with new configuration
-				cbModels.forEach(cbModel -> {
-					try {
-						update(cbModel, ConfigMode.DAY_1);
-					} catch (JsonProcessingException e) {
-						LOG.error(e.getMessage());
-					}
-				});
+			// at most one rollout per deployment for the commit
+			Set<String> rollouts = new HashSet<>();
+			day2Updates.values().forEach(cmapUpdate -> day2Evaluations(cmapUpdate, rollouts));
 
-				// put configs in etcd for cim to pick up
+			// keep day 1 config up-to-date (for upgrade)
+			if (!day2Updates.isEmpty()) {
 				try {
 					day1Evaluations(nfId);
 				} catch (JsonProcessingException e) {
 					LOG.error(e.getMessage());
 				}
 			}
-		});
+
+		} else {
+
+			// mark as day 1 config
+			LOG.debug("NF is not marked active, proceeding with DAY_1 flow");
+
+			// update configmaps with new configuration
+			cbModels.forEach(cbModel -> {
+				try {
+					update(cbModel, ConfigMode.DAY_1, null);
+				} catch (JsonProcessingException e) {
+					LOG.error(e.getMessage());
+				}
+			});
+
+			// put configs in etcd for cim to pick up
+			try {
+				day1Evaluations(nfId);
+			} catch (JsonProcessingException e) {
+				LOG.error(e.getMessage());
+			}
+		}
 	}
 
 	private static HashMap<String, List<CallbackModel>> getConfigPerNf(List<CallbackModel> updateModels) {
@@ -264,9 +373,13 @@ public class ConfigUtil {
 		return configPerNf;
 	}
 
-	private void update(CallbackModel cbModel, ConfigMode cfgType) throws JsonProcessingException {
+	/**
+	 * @param day2Updates DAY_2 changes are collected here per configmap, to be
+	 *                    written together
+	 */
+	private void update(CallbackModel cbModel, ConfigMode cfgType, Map<String, ConfigMapUpdate> day2Updates)
+			throws JsonProcessingException {
 		LOG.info("Config Type: " + cfgType);
-		KubernetesClient client = k8sClient.getClient();
 		LOG.debug("--- ConfigCallbackModel: " + MAPPER.writeValueAsString(cbModel));
 
 		// get configmap and file for that config
@@ -281,10 +394,45 @@ public class ConfigUtil {
 		ConfModelMetadata configMeta = Utils.confModelPerConfigmap.get(cmapName + "/" + cmapNamespace).get(yangFile);
 		LOG.debug("--- ConfModel Metadata: " + MAPPER.writeValueAsString(configMeta));
 
-		// get updated config
-		String updatedJsonConfig = jsonUtil.getUpdatedConfig(configMeta,
-				Utils.confModelPerConfigmap.get(cmapName + "/" + cmapNamespace), ConfigDatatype.JSON,
-				cmapMeta.getNfId());
+		String jsonKey = Utils.getJsonFromYang(yangFile);
+		String currentJsonConfig = null;
+		String updatedJsonConfig = null;
+		JsonNode diffNode = null;
+
+		// get updated config, from the changes seen in the transaction when possible
+		if (!updateMode.equals(UPDATE_MODE_FULL)) {
+			currentJsonConfig = getConfigMapData(cmapName, cmapNamespace, jsonKey);
+			try {
+				JsonNode config = currentJsonConfig.isEmpty() ? MAPPER.createObjectNode()
+						: MAPPER.readTree(currentJsonConfig);
+				if (config.isObject()) {
+					diffNode = jsonUtil.getJsonPatch((ObjectNode) config, cbModel.getChanges());
+					if (diffNode != null)
+						updatedJsonConfig = MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(config);
+				}
+			} catch (IOException e) {
+				LOG.error(e.getMessage(), e);
+			}
+			configPatchTotal.labels(diffNode != null ? "incremental" : "fallback").inc();
+		}
+
+		if (updatedJsonConfig == null || updateMode.equals(UPDATE_MODE_VERIFY)) {
+			String fullJsonConfig = jsonUtil.getUpdatedConfig(configMeta,
+					Utils.confModelPerConfigmap.get(cmapName + "/" + cmapNamespace), ConfigDatatype.JSON,
+					cmapMeta.getNfId());
+
+			if (updatedJsonConfig != null && fullJsonConfig != null) {
+				JsonNode mismatch = jsonUtil.getJsonDiff(updatedJsonConfig, fullJsonConfig);
+				if (mismatch == null || mismatch.size() != 0) {
+					LOG.warn("Incremental config differs from Netconf, using Netconf config for ConfigMap: "
+							+ cmapName + ", Namespace: " + cmapNamespace + ", Data Key: " + jsonKey);
+					configPatchTotal.labels("mismatch").inc();
+					diffNode = null;
+				}
+			} else
+				diffNode = null;
+			updatedJsonConfig = fullJsonConfig;
+		}
 
 		if (updatedJsonConfig == null) {
 			LOG.error("--- Updated Json Config is null, stopping further processing");
@@ -292,7 +440,6 @@ public class ConfigUtil {
 		}
 
 		// update configmap
-		String jsonKey = Utils.getJsonFromYang(yangFile);
 		updateL("Updating ConfigMap: " + cmapName + ", Namespace: " + cmapNamespace + " Data Key: " + jsonKey
 				+ " Config Type: " + cfgType);
 
@@ -300,28 +447,32 @@ public class ConfigUtil {
 
 			// DAY 1
 			try {
-				LOG.info("Updating JSON key: " + jsonKey);
-				ConfigMap cmap = client.configMaps().inNamespace(cmapNamespace).withName(cmapName).edit()
-						.addToData(jsonKey, updatedJsonConfig).done();
-				LOG.info("Updated JSON key: " + jsonKey);
+				String jsonConfig = updatedJsonConfig;
 
 				// check whether xml also needs to be updated
 				String xmlKey = jsonKey.substring(0, jsonKey.indexOf(Constants.JSON)) + Constants.XML;
-				if (cmap.getData().containsKey(xmlKey)) {
-
-					LOG.info("Updating XML key: " + xmlKey);
+				String updatedXmlConfig = null;
+				if (getConfigMap(cmapName, cmapNamespace).getData().containsKey(xmlKey)) {
 
 					// get updated xml config
-					String updatedXmlConfig = jsonUtil.getUpdatedConfig(configMeta,
+					LOG.info("Updating XML key: " + xmlKey);
+					updatedXmlConfig = jsonUtil.getUpdatedConfig(configMeta,
 							Utils.confModelPerConfigmap.get(cmapName + "/" + cmapNamespace), ConfigDatatype.XML,
 							cmapMeta.getNfId());
+				}
+				String xmlConfig = updatedXmlConfig;
 
-					// update configmap with new xml
-					client.configMaps().inNamespace(cmapNamespace).withName(cmapName).edit()
-							.addToData(xmlKey, updatedXmlConfig).done();
+				// json and xml in one update
+				LOG.info("Updating JSON key: " + jsonKey);
+				updateData(cmapName, cmapNamespace, current -> {
+					Map<String, String> data = new HashMap<>();
+					data.put(jsonKey, jsonConfig);
+					if (xmlConfig != null)
+						data.put(xmlKey, xmlConfig);
+					return data;
+				});
+				LOG.info("Updated JSON key: " + jsonKey + (xmlConfig != null ? ", XML key: " + xmlKey : ""));
 
-					LOG.info("Updated XML key: " + xmlKey);
-				}
 				updateL("ConfigMap: " + cmapName + ", in Namespace: " + cmapNamespace
 						+ " was updated successfully for Data File: " + jsonKey);
 
@@ -332,19 +483,69 @@ public class ConfigUtil {
 		} else {
 
 			// DAY 2
-			JsonNode diffNode = jsonUtil.getJsonDiff(
-					client.configMaps().inNamespace(cmapNamespace).withName(cmapName).get().getData().get(jsonKey),
-					updatedJsonConfig);
+			if (diffNode == null) {
+				if (currentJsonConfig == null)
+					currentJsonConfig = getConfigMapData(cmapName, cmapNamespace, jsonKey);
+				diffNode = jsonUtil.getJsonDiff(currentJsonConfig, updatedJsonConfig);
+			}
 
 			if (diffNode != null && diffNode.size() != 0) {
-				day2Evaluations(cmapName, cmapNamespace, diffNode, jsonKey, updatedJsonConfig, cbModel.isRestart(),
-						cmapMeta);
+				day2Updates.computeIfAbsent(cmapName + "/" + cmapNamespace,
+						key -> new ConfigMapUpdate(cmapName, cmapNamespace, cmapMeta))
+						.add(jsonKey, updatedJsonConfig, diffNode, cbModel.isRestart());
 			} else
 				LOG.debug("Json Diff is NULL, ConfigMap: " + cmapName + " in Namespace: " + cmapNamespace
 						+ " remains unchanged.");
 		}
 	}
 
+	private String getConfigMapData(String cmapName, String cmapNamespace, String dataKey) {
+		String data = getConfigMap(cmapName, cmapNamespace).getData().get(dataKey);
+		return data == null ? Constants.EMPTY_STRING : data;
+	}
+
+	private ConfigMap getConfigMap(String cmapName, String cmapNamespace) {
+		ConfigMap cmap = configMapCache.get(cmapNamespace, cmapName);
+		if (cmap == null)
+			throw new KubernetesClientException("ConfigMap: " + cmapName + " not found in Namespace: " + cmapNamespace);
+		return cmap;
+	}
+
+	/**
+	 * Writes data keys of a configmap in one request, which only succeeds if the
+	 * configmap is still at the resourceVersion the keys were computed from. On a
+	 * conflict they are computed again from the current configmap.
+	 *
+	 * @param changes data keys to write, computed from the current configmap
+	 * @return configmap as written
+	 */
+	private ConfigMap updateData(String cmapName, String cmapNamespace,
+			Function<ConfigMap, Map<String, String>> changes) {
+
+		KubernetesClient client = k8sClient.getClient();
+		ConfigMap current = getConfigMap(cmapName, cmapNamespace);
+		for (int attempt = 0;; attempt++) {
+			ConfigMap updated = new ConfigMapBuilder(current).addToData(changes.apply(current)).build();
+			try {
+				ConfigMap written = client.configMaps().inNamespace(cmapNamespace).withName(cmapName)
+						.lockResourceVersion(current.getMetadata().getResourceVersion()).replace(updated);
+				configMapCache.written(written);
+				return written;
+
+			} catch (KubernetesClientException e) {
+				if (e.getCode() != 409 || attempt >= conflictRetries)
+					throw e;
+
+				// changed meanwhile, the cache may not have seen it yet
+				configMapUpdateConflicts.inc();
+				LOG.warn("ConfigMap: " + cmapName + " in Namespace: " + cmapNamespace + " changed, retrying update");
+				current = client.configMaps().inNamespace(cmapNamespace).withName(cmapName).get();
+				if (current == null)
+					throw e;
+			}
+		}
+	}
+
 	private void day1Evaluations(String nfId) throws JsonProcessingException {
 
 		// update in etcd @ /config/namespace/microservice : config
@@ -353,7 +554,7 @@ public class ConfigUtil {
 
 			String cmapNamespace = nfCmapMeta.getK8sNamespace();
 			String cmapName = nfCmapMeta.getConfigmapName();
-			ConfigMap nfCmap = k8sClient.getClient().configMaps().inNamespace(cmapNamespace).withName(cmapName).get();
+			ConfigMap nfCmap = configMapCache.get(cmapNamespace, cmapName);
 
 			LOG.info("Got NF ConfigMap: " + cmapName + ", Namespace: " + cmapNamespace
 					+ ", calculating config requirements per microservice");
@@ -479,26 +680,18 @@ public class ConfigUtil {
 			String namespace, Map<String, Map<String, Object>> configsPerMicroservice) throws JsonProcessingException {
 
 		LOG.info("Scanning microservice-level ConfigMaps for namespace: [" + namespace + "], NfId: [" + nfId + "]");
-		KubernetesClient client = k8sClient.getClient();
 
 		/*
 		 * collect editable configmaps in the namespace for that NF, excluding NF-level
 		 * configmap, which is already considered
 		 */
 
-		List<ConfigMap> configMaps = client.configMaps().inNamespace(namespace).list().getItems().stream()
+		List<ConfigMap> configMaps = configMapCache.listByNf(namespace, nfId).stream()
 				.filter(cm -> !cm.getMetadata().getName().equals(nfCmapName))
 				.filter(cm -> K8sUtil.editableConfigMaps.contains(cm.getMetadata().getName() + "/" + namespace))
 				.filter(cm -> {
-					try {
-						JsonNode tmaas = MAPPER.readTree(cm.getMetadata().getAnnotations().get(Constants.ANN_TMAAS));
-						if (tmaas.get(Constants.NF_ID).asText().equals(nfId)
-								&& tmaas.get(Constants.XGVELA_ID).asText().equals(ConfigMapWatchProcessor.selfXGVelaId))
-							return true;
-					} catch (JsonProcessingException e) {
-						LOG.error(e.getMessage());
-					}
-					return false;
+					TmaasAnnotation tmaas = TmaasAnnotation.of(cm);
+					return tmaas != null && tmaas.isOf(nfId, ConfigMapWatchProcessor.selfXGVelaId);
 				}).collect(Collectors.toList());
 
 		if (configMaps.size() == 0) {
@@ -538,87 +731,92 @@ public class ConfigUtil {
 		return configsPerMicroservice;
 	}
 
-	private void day2Evaluations(String cmapName, String cmapNamespace, JsonNode diffNode, String jsonKey,
-			String updatedJsonConfig, boolean restartFlag, ConfigMapMetadata cmapMeta) {
+	private void day2Evaluations(ConfigMapUpdate cmapUpdate, Set<String> rollouts) {
 
-		updateL("ConfigMap: " + cmapName + ", Namespace: " + cmapNamespace + ", NF Id: " + cmapMeta.getNfId());
-		KubernetesClient client = k8sClient.getClient();
+		String cmapName = cmapUpdate.cmapName;
+		String cmapNamespace = cmapUpdate.cmapNamespace;
+		String nfId = cmapUpdate.cmapMeta.getNfId();
+
+		updateL("ConfigMap: " + cmapName + ", Namespace: " + cmapNamespace + ", NF Id: " + nfId + ", Data Keys: "
+				+ cmapUpdate.dataKeys.keySet());
 		try {
-			// get configmap
-			ConfigMap configMap = client.configMaps().inNamespace(cmapNamespace).withName(cmapName).get();
-			Map<String, String> cmapData = configMap.getData();
+			Map<String, String> cmapData = getConfigMap(cmapName, cmapNamespace).getData();
+			Map<String, String> updatedData = new HashMap<>();
+			cmapUpdate.dataKeys.forEach((jsonKey, dataKeyUpdate) -> {
+				updatedData.put(jsonKey, dataKeyUpdate.updatedJsonConfig);
 
-			String revision = cmapData.get(Constants.REVISION_KEY);
-			updateL("Current ConfigMap revision: " + revision);
+				// check whether xml also needs to be updated
+				String xmlKey = jsonKey.substring(0, jsonKey.indexOf(Constants.JSON)) + Constants.XML;
+				if (cmapData.containsKey(xmlKey)) {
 
-			// increment revision
-			revision = String.valueOf(Integer.parseInt(revision) + 1);
-			updateL("Updated ConfigMap revision: " + revision);
+					// get updated xml config
+					LOG.info("Updating XML key: " + xmlKey);
+					updatedData.put(xmlKey, jsonUtil.getUpdatedConfig(
+							Utils.confModelPerConfigmap.get(cmapName + "/" + cmapNamespace)
+									.get(jsonKey.substring(0, jsonKey.indexOf(Constants.JSON)) + Constants.YANG),
+							Utils.confModelPerConfigmap.get(cmapName + "/" + cmapNamespace), ConfigDatatype.XML,
+							nfId));
+				}
+			});
 
-			// update configmap
-			LOG.info("Updating JSON key: " + jsonKey);
+			// all data keys and one incremented revision in one update
+			LOG.info("Updating data keys: " + updatedData.keySet());
 			configMapUpdateAttempts.inc();
-			client.configMaps().inNamespace(cmapNamespace).withName(cmapName).edit()
-					.addToData(jsonKey, updatedJsonConfig).addToData(Constants.REVISION_KEY, revision).done();
-			LOG.info("Updating JSON key: " + jsonKey);
-
-			// check whether xml also needs to be updated
-			String xmlKey = jsonKey.substring(0, jsonKey.indexOf(Constants.JSON)) + Constants.XML;
-			if (configMap.getData().containsKey(xmlKey)) {
-
-				LOG.info("Updating XML key: " + xmlKey);
-
-				// get updated xml config
-				String updatedXmlConfig = jsonUtil.getUpdatedConfig(
-						Utils.confModelPerConfigmap.get(cmapName + "/" + cmapNamespace)
-								.get(jsonKey.substring(0, jsonKey.indexOf(Constants.JSON)) + Constants.YANG),
-						Utils.confModelPerConfigmap.get(cmapName + "/" + cmapNamespace), ConfigDatatype.XML,
-						cmapMeta.getNfId());
-
-				// update configmap with new xml
-				client.configMaps().inNamespace(cmapNamespace).withName(cmapName).edit()
-						.addToData(xmlKey, updatedXmlConfig).done();
-
-				LOG.info("Updated XML key: " + xmlKey);
-			}
+			configUpdatesCoalesced.labels("configmap").inc(cmapUpdate.dataKeys.size() - 1);
+			ConfigMap configMap = updateData(cmapName, cmapNamespace, current -> {
+				String currentRevision = current.getData().get(Constants.REVISION_KEY);
+				updateL("Current ConfigMap revision: " + currentRevision);
+
+				Map<String, String> data = new HashMap<>(updatedData);
+				data.put(Constants.REVISION_KEY, String.valueOf(Integer.parseInt(currentRevision) + 1));
+				return data;
+			});
 
-			// notify and log
-			NotificationUtil.sendEvent("CmaasConfigmapUpdateSuccess",
-					getMgdObjs(cmapNamespace, cmapName, jsonKey, revision));
-			updateL("ConfigMap: " + cmapName + ", in Namespace: " + cmapNamespace + " was updated successfully.");
+			Map<String, String> updatedCmapData = configMap.getData();
+			String revision = updatedCmapData.get(Constants.REVISION_KEY);
+			updateL("Updated ConfigMap revision: " + revision);
 
 			// get svcVersion
 			String svcVersion = String
 					.valueOf(configMap.getMetadata().getAnnotations().getOrDefault(Constants.SVC_VERSION, "v0"));
 
-			// get update policy for data file
-			String updatePolicy = resolveUpdatePolicy(restartFlag, cmapData, jsonKey);
+			for (Map.Entry<String, DataKeyUpdate> entry : cmapUpdate.dataKeys.entrySet()) {
+				String jsonKey = entry.getKey();
+				DataKeyUpdate dataKeyUpdate = entry.getValue();
 
-			if (cmapData.containsKey(Constants.DEPENDENCY_KEY)) {
+				// notify and log
+				NotificationUtil.sendEvent("CmaasConfigmapUpdateSuccess",
+						getMgdObjs(cmapNamespace, cmapName, jsonKey, revision));
+				updateL("ConfigMap: " + cmapName + ", in Namespace: " + cmapNamespace
+						+ " was updated successfully for Data File: " + jsonKey);
 
-				// NF-level map
-				JSONArray microservices = jsonUtil.getMicrosvcList(cmapData, jsonKey);
-				for (int index = 0; index < microservices.length(); index++) {
+				// get update policy for data file
+				String updatePolicy = resolveUpdatePolicy(dataKeyUpdate.restart, updatedCmapData, jsonKey);
 
-					String microservice = String.valueOf(microservices.get(index));
-					policyHandler(updatePolicy, cmapNamespace, microservice, diffNode.toString(), revision, jsonKey,
-							Constants.MAP_LEVEL_NF, svcVersion);
-				}
-			} else {
+				List<String> microservices = new ArrayList<>();
+				String mapLevel;
+				if (updatedCmapData.containsKey(Constants.DEPENDENCY_KEY)) {
 
-				// Microservice-level map
-				String microservice = configMap.getMetadata().getLabels().get(Constants.MICROSERVICE_LABEL);
-				policyHandler(updatePolicy, cmapNamespace, microservice, diffNode.toString(), revision, jsonKey,
-						Constants.MAP_LEVEL_MS, svcVersion);
-			}
+					// NF-level map
+					JSONArray microsvcList = jsonUtil.getMicrosvcList(updatedCmapData, jsonKey);
+					for (int index = 0; index < microsvcList.length(); index++)
+						microservices.add(String.valueOf(microsvcList.get(index)));
+					mapLevel = Constants.MAP_LEVEL_NF;
+				} else {
 
-			// keep day 1 config up-to-date (for upgrade)
-			day1Evaluations(cmapMeta.getNfId());
+					// Microservice-level map
+					microservices.add(configMap.getMetadata().getLabels().get(Constants.MICROSERVICE_LABEL));
+					mapLevel = Constants.MAP_LEVEL_MS;
+				}
+				fanOut(updatePolicy, cmapNamespace, microservices, dataKeyUpdate.diffNode.toString(), revision,
+						jsonKey, mapLevel, svcVersion, rollouts);
+			}
 
 		} catch (Exception e) {
 			configMapUpdateFailed.inc();
 			updateL("Failed to update ConfigMap: " + cmapName + " in Namespace: " + cmapNamespace);
-			NotificationUtil.sendEvent("CmaasConfigmapUpdateFailure", getMgdObjs(cmapNamespace, cmapName, jsonKey));
+			cmapUpdate.dataKeys.keySet().forEach(jsonKey -> NotificationUtil.sendEvent("CmaasConfigmapUpdateFailure",
+					getMgdObjs(cmapNamespace, cmapName, jsonKey)));
 			LOG.error(e.getMessage(), e);
 		}
 	}
@@ -630,24 +828,80 @@ public class ConfigUtil {
 		return k8s.getUpdatePolicy(cmapData, dataFile);
 	}
 
-	private void policyHandler(String updatePolicy, String namespace, String microservice, String diffString,
-			String updatedRevision, String dataKey, String mapLevel, String svcVersion) {
+	// executes the policy for all microservices concurrently, returns once all are
+	// done
+	private void fanOut(String updatePolicy, String namespace, List<String> microservices, String diffString,
+			String updatedRevision, String dataKey, String mapLevel, String svcVersion, Set<String> rollouts) {
+
+		Histogram.Timer timer = fanoutDuration.labels(mapLevel).startTimer();
+		Map<String, CompletableFuture<Boolean>> results = new LinkedHashMap<>();
+		try {
+			for (String microservice : microservices) {
+				fanoutPermits.acquire();
+				CompletableFuture<Boolean> result;
+				try {
+					result = policyHandler(updatePolicy, namespace, microservice, diffString, updatedRevision, dataKey,
+							mapLevel, svcVersion, rollouts);
+				} catch (RuntimeException e) {
+					fanoutPermits.release();
+					throw e;
+				}
+				result.whenComplete((done, e) -> fanoutPermits.release());
+				results.put(microservice, result);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOG.error("Interrupted executing policy for data key: " + dataKey + ", started for: " + results.keySet());
+		} finally {
+
+			// results never complete exceptionally
+			List<String> failed = new ArrayList<>();
+			results.forEach((microservice, result) -> {
+				boolean done = result.join();
+				fanoutTargets.labels(done ? "success" : "failure").inc();
+				if (!done)
+					failed.add(microservice);
+			});
+			updateL("Executed policy: " + updatePolicy + " for data key: " + dataKey + ", microservices: "
+					+ results.size() + ", failed: " + failed + ", in " + timer.observeDuration() + "s");
+		}
+	}
+
+	/**
+	 * @return completes with false if the change-set push or rollout failed
+	 */
+	private CompletableFuture<Boolean> policyHandler(String updatePolicy, String namespace, String microservice,
+			String diffString, String updatedRevision, String dataKey, String mapLevel, String svcVersion,
+			Set<String> rollouts) {
 
 		updateL("Executing policy for microservice named: " + microservice + ", svcVersion:" + svcVersion);
 
 		if (updatePolicy.equalsIgnoreCase(Constants.DYNAMIC))
-			notifyChangeSet(namespace, microservice, diffString, updatedRevision, dataKey, mapLevel, svcVersion);
-		else
+			return notifyChangeSet(namespace, microservice, diffString, updatedRevision, dataKey, mapLevel,
+					svcVersion);
+
+		if (!rollouts.add(namespace + "/" + microservice + "/" + svcVersion)) {
+			updateL("Deployment of microservice: " + microservice + " already rolled out for this commit");
+			configUpdatesCoalesced.labels("rollout").inc();
+			return CompletableFuture.completedFuture(true);
+		}
+
+		return CompletableFuture.supplyAsync(() -> {
 			k8s.rolloutDeployment(namespace, microservice, svcVersion);
+			return true;
+		}, rolloutExecutor).exceptionally(e -> {
+			LOG.error("Rollout of microservice: " + microservice + " failed: " + e.getMessage(), e);
+			return false;
+		});
 	}
 
-	private void notifyChangeSet(String namespace, String microservice, String diffNode, String revision,
-			String dataKey, String mapLevel, String svcVersion) {
+	private CompletableFuture<Boolean> notifyChangeSet(String namespace, String microservice, String diffNode,
+			String revision, String dataKey, String mapLevel, String svcVersion) {
 
 		String path = Constants.CHANGE_SET_PREFIX + namespace + "/" + microservice + "/" + svcVersion + "/" + mapLevel
 				+ "/" + dataKey + "/" + revision;
 
-		etcd.putChangeSet(path, diffNode);
+		return etcd.putChangeSetAsync(path, diffNode);
 	}
 
 	private ArrayList<KeyValueBean> getMgdObjs(String k8sNamespace, String configMapName, String dataKey,
@@ -666,4 +920,46 @@ public class ConfigUtil {
 	private void updateL(String msg) {
 		LOG.info(Constants.ACTIVITY + Constants.UPDATE + msg);
 	}
+
+	// day-2 changes of the data keys of one configmap, written as one revision
+	private static class ConfigMapUpdate {
+		private final String cmapName;
+		private final String cmapNamespace;
+		private final ConfigMapMetadata cmapMeta;
+
+		// <json data key: change>
+		private final Map<String, DataKeyUpdate> dataKeys = new LinkedHashMap<>();
+
+		private ConfigMapUpdate(String cmapName, String cmapNamespace, ConfigMapMetadata cmapMeta) {
+			this.cmapName = cmapName;
+			this.cmapNamespace = cmapNamespace;
+			this.cmapMeta = cmapMeta;
+		}
+
+		private void add(String jsonKey, String updatedJsonConfig, JsonNode diffNode, boolean restart) {
+			DataKeyUpdate previous = dataKeys.get(jsonKey);
+			if (previous != null && previous.diffNode.isArray() && diffNode.isArray()) {
+
+				// same data key twice, apply both patches in order
+				ArrayNode merged = MAPPER.createArrayNode();
+				merged.addAll((ArrayNode) previous.diffNode);
+				merged.addAll((ArrayNode) diffNode);
+				diffNode = merged;
+				restart |= previous.restart;
+			}
+			dataKeys.put(jsonKey, new DataKeyUpdate(updatedJsonConfig, diffNode, restart));
+		}
+	}
+
+	private static class DataKeyUpdate {
+		private final String updatedJsonConfig;
+		private final JsonNode diffNode;
+		private final boolean restart;
+
+		private DataKeyUpdate(String updatedJsonConfig, JsonNode diffNode, boolean restart) {
+			this.updatedJsonConfig = updatedJsonConfig;
+			this.diffNode = diffNode;
+			this.restart = restart;
+		}
+	}
 }
\ No newline at end of file
@@ -15,6 +15,7 @@
 package org.xgvela.cnf.util;
 
 import org.xgvela.cnf.netconf.DataProvider;
+import org.xgvela.cnf.netconf.callbacks.TopologyUpdates;
 import org.xgvela.cnf.etcd.ConfigAuditor;
 import org.xgvela.cnf.etcd.EtcdUtil;
 import org.xgvela.cnf.k8s.ConfigMapWatchClient;
@@ -36,6 +37,9 @@ public class InitializationBean {
 	@Autowired
 	private SubscriptionManager subscription;
 
+	@Autowired
+	private TopologyUpdates topologyUpdates;
+
 	@Autowired
 	private DataProvider provider;
 
@@ -65,6 +69,10 @@ public class InitializationBean {
 		LOG.info("Executing subscription services");
 		subscription.init();
 
+		// sync subscription, topology fetched async
+		LOG.info("Subscribing to topology events");
+		topologyUpdates.init();
+
 		// async
 		LOG.info("Starting HTTP exporter");
 		metrics.startHTTPExporter();
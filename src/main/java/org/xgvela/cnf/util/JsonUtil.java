@@ -15,7 +15,9 @@
 package org.xgvela.cnf.util;
 
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -28,13 +30,30 @@ import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.xgvela.cnf.Constants;
 import org.xgvela.cnf.netconf.NetconfUtil;
+import org.xgvela.cnf.netconf.models.ConfigChange;
+import org.xgvela.cnf.netconf.models.ConfigChange.Segment;
 import org.xgvela.cnf.util.Utils.ConfigDatatype;
 import org.xgvela.cnf.util.Utils.RootType;
 import org.xgvela.model.ConfModelMetadata;
 
+import com.tailf.conf.ConfBool;
+import com.tailf.conf.ConfBuf;
+import com.tailf.conf.ConfDecimal64;
+import com.tailf.conf.ConfInt16;
+import com.tailf.conf.ConfInt32;
+import com.tailf.conf.ConfInt64;
+import com.tailf.conf.ConfInt8;
+import com.tailf.conf.ConfUInt16;
+import com.tailf.conf.ConfUInt32;
+import com.tailf.conf.ConfUInt64;
+import com.tailf.conf.ConfUInt8;
+import com.tailf.conf.ConfValue;
+
 import io.fabric8.zjsonpatch.JsonDiff;
 
 @Component
@@ -72,6 +91,149 @@ public class JsonUtil {
 		return null;
 	}
 
+	/**
+	 * Applies the changes of a transaction to the config (configmap JSON) in
+	 * place and returns them as a JSON patch. Returns null, leaving the config
+	 * partially changed, if a change cannot be mapped with certainty (created
+	 * nodes, leaves of unknown type, list entries not found or ambiguous, lists
+	 * of unknown keys); the caller then falls back to reading the full config.
+	 */
+	public JsonNode getJsonPatch(ObjectNode config, List<ConfigChange> changes) {
+		if (changes == null || changes.isEmpty())
+			return null;
+
+		ArrayNode patch = JsonNodeFactory.instance.arrayNode();
+		for (ConfigChange change : changes) {
+			if (!applyChange(config, change, patch)) {
+				LOG.debug("Unable to apply change incrementally: " + change);
+				return null;
+			}
+		}
+		LOG.debug("Json Patch: " + patch);
+		return patch;
+	}
+
+	private static boolean applyChange(ObjectNode config, ConfigChange change, ArrayNode patch) {
+		List<Segment> path = change.getPath();
+		if (path.isEmpty())
+			return false;
+
+		// walk down to the parent of the changed node
+		JsonNode parent = config;
+		StringBuilder pointer = new StringBuilder();
+		for (int i = 0; i < path.size() - 1; i++) {
+			parent = step(parent, path.get(i), pointer);
+			if (parent == null)
+				return false;
+		}
+
+		Segment last = path.get(path.size() - 1);
+		switch (change.getOperation()) {
+		case SET:
+			if (last.isKey() || !parent.isObject())
+				return false;
+
+			// only leaves are set, a leaf-list or subtree here means the types differ
+			JsonNode existing = parent.get(last.getTag());
+			if (existing != null && !existing.isValueNode())
+				return false;
+
+			JsonNode value = toJson(change.getValue(), existing);
+			if (value == null)
+				return false;
+
+			((ObjectNode) parent).set(last.getTag(), value);
+			patch.addObject().put("op", existing == null ? "add" : "replace")
+					.put("path", pointer.append('/').append(escape(last.getTag())).toString()).set("value", value);
+			return true;
+
+		case REMOVE:
+			// not located with certainty, the full read tells what is left
+			StringBuilder target = new StringBuilder(pointer);
+			if (step(parent, last, target) == null)
+				return false;
+
+			if (last.isKey())
+				((ArrayNode) parent).remove(Integer.parseInt(target.substring(target.lastIndexOf("/") + 1)));
+			else
+				((ObjectNode) parent).remove(last.getTag());
+
+			patch.addObject().put("op", "remove").put("path", target.toString());
+			return true;
+
+		default:
+			// created nodes carry no values (and list keys no names) in the keypath
+			return false;
+		}
+	}
+
+	// resolve one keypath segment, appending it to the JSON pointer
+	private static JsonNode step(JsonNode node, Segment segment, StringBuilder pointer) {
+		if (!segment.isKey()) {
+			JsonNode child = node.isObject() ? node.get(segment.getTag()) : null;
+			if (child != null)
+				pointer.append('/').append(escape(segment.getTag()));
+			return child;
+		}
+
+		if (!node.isArray() || segment.getKeyNames() == null)
+			return null;
+
+		// entry matched by its key leaves; it must be unique
+		int index = -1;
+		for (int i = 0; i < node.size(); i++) {
+			if (matchesKeys(node.get(i), segment.getKeyNames(), segment.getKeys())) {
+				if (index != -1)
+					return null;
+				index = i;
+			}
+		}
+		if (index == -1)
+			return null;
+
+		pointer.append('/').append(index);
+		return node.get(index);
+	}
+
+	private static boolean matchesKeys(JsonNode entry, String[] keyNames, String[] keys) {
+		if (!entry.isObject())
+			return false;
+
+		for (int i = 0; i < keys.length; i++) {
+			JsonNode value = entry.get(keyNames[i]);
+			if (value == null || !value.isValueNode() || !value.asText().equals(keys[i]))
+				return false;
+		}
+		return true;
+	}
+
+	// JSON value of a leaf, typed like the existing one or else as in RFC 7951
+	private static JsonNode toJson(ConfValue value, JsonNode existing) {
+		JsonNodeFactory factory = JsonNodeFactory.instance;
+
+		if (value instanceof ConfBuf)
+			return factory.textNode(value.toString());
+
+		if (value instanceof ConfBool)
+			return factory.booleanNode(((ConfBool) value).booleanValue());
+
+		if (value instanceof ConfInt8 || value instanceof ConfInt16 || value instanceof ConfInt32
+				|| value instanceof ConfUInt8 || value instanceof ConfUInt16 || value instanceof ConfUInt32) {
+			return existing != null && existing.isTextual() ? factory.textNode(value.toString())
+					: factory.numberNode(Long.parseLong(value.toString()));
+		}
+
+		if (value instanceof ConfInt64 || value instanceof ConfUInt64 || value instanceof ConfDecimal64) {
+			return existing != null && existing.isNumber() ? factory.numberNode(new BigDecimal(value.toString()))
+					: factory.textNode(value.toString());
+		}
+		return null;
+	}
+
+	private static String escape(String token) {
+		return token.replace("~", "~0").replace("/", "~1");
+	}
+
 	public JSONArray getMicrosvcList(Map<String, String> cmapData, String dataFile) {
 
 		JSONObject dependencies = new JSONObject(cmapData.get(Constants.DEPENDENCY_KEY));
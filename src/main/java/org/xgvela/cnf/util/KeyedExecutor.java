@@ -0,0 +1,118 @@
+// Copyright 2020 Mavenir
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.xgvela.cnf.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import io.prometheus.client.Gauge;
+
+/**
+ * Runs tasks on a fixed set of single-threaded shards. Tasks submitted with the
+ * same key always land on the same shard, so they execute in submission order,
+ * while tasks for different keys run in parallel. With a bounded capacity,
+ * {@link #execute(String, Runnable)} blocks the caller while the target shard
+ * is full.
+ */
+public class KeyedExecutor {
+
+	private static final Logger LOG = LogManager.getLogger(KeyedExecutor.class);
+
+	private final String name;
+	private final ThreadPoolExecutor[] shards;
+	private final Gauge queueDepth;
+
+	/**
+	 * @param name       prefix for worker thread names
+	 * @param workers    number of shards (one thread each)
+	 * @param queueDepth gauge with a single "shard" label, may be null
+	 */
+	public KeyedExecutor(String name, int workers, Gauge queueDepth) {
+		this(name, workers, 0, queueDepth);
+	}
+
+	/**
+	 * @param name       prefix for worker thread names
+	 * @param workers    number of shards (one thread each)
+	 * @param capacity   pending tasks per shard before callers block, 0 for
+	 *                   unbounded
+	 * @param queueDepth gauge with a single "shard" label, may be null
+	 */
+	public KeyedExecutor(String name, int workers, int capacity, Gauge queueDepth) {
+		this.name = name;
+		this.queueDepth = queueDepth;
+		this.shards = new ThreadPoolExecutor[Math.max(1, workers)];
+
+		for (int i = 0; i < shards.length; i++) {
+			final String threadName = name + "-" + i;
+			BlockingQueue<Runnable> tasks = capacity > 0 ? new ArrayBlockingQueue<>(capacity)
+					: new LinkedBlockingQueue<>();
+
+			shards[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, tasks, runnable -> {
+				Thread thread = new Thread(runnable, threadName);
+				thread.setDaemon(true);
+				return thread;
+			}, (runnable, executor) -> {
+				// shard is full, wait for room instead of rejecting
+				try {
+					executor.getQueue().put(runnable);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RejectedExecutionException(e);
+				}
+			});
+		}
+		LOG.info("Started " + shards.length + " " + name + " worker(s)");
+	}
+
+	public void execute(String key, Runnable task) {
+		final String shard = String.valueOf(shardOf(key));
+		if (queueDepth != null)
+			queueDepth.labels(shard).inc();
+
+		shards[shardOf(key)].execute(() -> {
+			if (queueDepth != null)
+				queueDepth.labels(shard).dec();
+			try {
+				task.run();
+			} catch (Exception e) {
+				LOG.error(name + " task failed for key: " + key, e);
+			}
+		});
+	}
+
+	/**
+	 * @return true if a task for the key can be queued without blocking, always
+	 *         true without a capacity
+	 */
+	public boolean hasRoom(String key) {
+		return shards[shardOf(key)].getQueue().remainingCapacity() > 0;
+	}
+
+	public int size() {
+		return shards.length;
+	}
+
+	private int shardOf(String key) {
+		return Math.floorMod(String.valueOf(key).hashCode(), shards.length);
+	}
+}
@@ -101,12 +101,12 @@ public class MetricsUtil {
 	}
 
 	public static Histogram addHistogram(String name, String help, String[] labels, double... buckets) {
-		return Histogram.build(name, help).labelNames(labels).register();
+		return Histogram.build(name, help).labelNames(labels).buckets(buckets).register();
 	}
 
 	public static Histogram addHistogram(String name, String help, String namespace, String[] labels,
 			double... buckets) {
-		return Histogram.build(name, help).namespace(namespace).labelNames(labels).register();
+		return Histogram.build(name, help).namespace(namespace).labelNames(labels).buckets(buckets).register();
 	}
 
 	public static Summary addSummary(String name, String help) {
@@ -15,8 +15,8 @@
 package org.xgvela.cnf.util;
 
 import java.io.IOException;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -48,7 +48,7 @@ public class SubscriptionManager {
 	private static final ObjectMapper MAPPER = new ObjectMapper();
 
 	// cache the names of NFs which have become ready atleast once
-	public static Set<String> readyNfs = new HashSet<>();
+	public static Set<String> readyNfs = ConcurrentHashMap.newKeySet();
 
 	@Autowired
 	EtcdUtil etcdUtil;
@@ -18,8 +18,11 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Scanner;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -69,8 +72,43 @@ public class Utils {
 		writeFile(Constants.YANG_FILE_PATH + moduleName + Constants.YANG, yangModel);
 	}
 
-	public static void deleteFxs(String moduleName) {
-		deleteFile(Constants.FXS_FILE_PATH + moduleName + Constants.FXS);
+	public static String readYang(String moduleName) {
+		Path yangPath = Paths.get(Constants.YANG_FILE_PATH + moduleName + Constants.YANG);
+		if (!Files.exists(yangPath)) {
+			LOG.debug("Yang not found in model directory for module: " + moduleName);
+			return null;
+		}
+		try {
+			return new String(Files.readAllBytes(yangPath));
+		} catch (IOException e) {
+			LOG.error("Error reading yang for module: " + moduleName, e);
+		}
+		return null;
+	}
+
+	// module names from "import <module> {" statements
+	public static List<String> getYangImports(String yangModel) {
+		return getYangStatementArgs(yangModel, "import");
+	}
+
+	// submodule names from "include <submodule>;" statements
+	public static List<String> getYangIncludes(String yangModel) {
+		return getYangStatementArgs(yangModel, "include");
+	}
+
+	private static List<String> getYangStatementArgs(String yangModel, String keyword) {
+		List<String> args = new ArrayList<>();
+		Scanner scanner = new Scanner(yangModel);
+		while (scanner.hasNextLine()) {
+			String line = scanner.nextLine().trim();
+			if (line.startsWith(keyword + " ")) {
+				String arg = line.substring(keyword.length()).trim().split("[\\s{;]", 2)[0].replaceAll("\"", "");
+				if (!arg.isEmpty())
+					args.add(arg);
+			}
+		}
+		scanner.close();
+		return args;
 	}
 
 	public static void writeFile(String fileName, String data) {
@@ -125,6 +163,31 @@ public class Utils {
 		return false;
 	}
 
+	// run command and return its standard output, null on failure
+	public static String execForOutput(String cmd) {
+		try {
+			String[] commands = { "bash", "-c", cmd };
+			Process proc = Runtime.getRuntime().exec(commands);
+
+			StringBuilder out = new StringBuilder();
+			BufferedReader stdOut = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+			String s = null;
+			while ((s = stdOut.readLine()) != null) {
+				out.append(s).append("\n");
+			}
+			proc.waitFor();
+
+			if (proc.exitValue() == 0)
+				return out.toString().trim();
+			LOG.error("ExitCode:" + proc.exitValue() + ", Command: " + cmd);
+		} catch (IOException e) {
+			LOG.error(e.getMessage(), e);
+		} catch (InterruptedException e) {
+			LOG.error(e.getMessage(), e);
+		}
+		return null;
+	}
+
 	public static boolean deleteFile(String file) {
 		LOG.info("Deleting file: " + file);
 		boolean status = false;